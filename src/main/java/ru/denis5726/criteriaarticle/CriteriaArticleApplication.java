@@ -2,8 +2,10 @@ package ru.denis5726.criteriaarticle;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class CriteriaArticleApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,63 @@
+package ru.denis5726.criteriaarticle.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.denis5726.criteriaarticle.config.CacheConfig;
+import ru.denis5726.criteriaarticle.event.CategoryChangedEvent;
+import ru.denis5726.criteriaarticle.event.OrderDataChangedEvent;
+import ru.denis5726.criteriaarticle.service.QueryJobService;
+
+import java.util.Optional;
+
+// Сбрасывает кэши запросов по заказам и готовые результаты заданий (QueryJobService)
+// после фиксации транзакции, в которой изменились данные.
+// Сброс до фиксации позволил бы параллельному запросу снова закэшировать старые данные
+@Component
+@RequiredArgsConstructor
+public class OrderCacheInvalidator {
+    private final CacheManager cacheManager;
+    private final QueryJobService queryJobService;
+
+    // События приходят на каждую записанную сущность, при массовой загрузке их десятки тысяч
+    // в одной транзакции, поэтому сброс регистрируется один раз на транзакцию
+    @EventListener
+    public void onOrderDataChanged(OrderDataChangedEvent event) {
+        invalidateAfterCommit();
+    }
+
+    @EventListener
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        invalidateAfterCommit();
+    }
+
+    public void invalidateAll() {
+        // Агрегаты в ответах зависят от многих заказов сразу, поэтому выборочно сбрасывать записи нельзя
+        CacheConfig.ORDER_CACHES.forEach(cacheName -> Optional.ofNullable(cacheManager.getCache(cacheName))
+                .ifPresent(cache -> cache.invalidate()));
+        queryJobService.invalidateResults();
+    }
+
+    private void invalidateAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidateAll();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResource(OrderCacheInvalidator.this);
+                if (status == STATUS_COMMITTED) {
+                    invalidateAll();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package ru.denis5726.criteriaarticle.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.denis5726.criteriaarticle.config.properties.OrderCacheProperties;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    public static final String SENT_IN_STORE_ORDERS = "findSentInStoreOrdersByStoreId";
+    public static final String STORE_STATISTIC = "findStoreStatistic";
+    public static final String TOP_STORE_STATISTIC = "findTopStoreStatistic";
+    public static final String ORDERS_WITH_PRODUCT_IN_CATEGORIES = "findOrderWithProductInCategories";
+    public static final String ORDERS_WITH_PRODUCT_CATEGORY = "findOrderWithProductCategory";
+    public static final String ORDER_DAY_STATISTIC = "findOrderDayStatistic";
+    public static final String ORDER_REVENUE_ROLLUP = "findOrderRevenueRollup";
+
+    // Кэши результатов OrderRepository, которые сбрасываются при изменении заказов
+    public static final List<String> ORDER_CACHES = List.of(
+            SENT_IN_STORE_ORDERS,
+            STORE_STATISTIC,
+            TOP_STORE_STATISTIC,
+            ORDERS_WITH_PRODUCT_IN_CATEGORIES,
+            ORDERS_WITH_PRODUCT_CATEGORY,
+            ORDER_DAY_STATISTIC,
+            ORDER_REVENUE_ROLLUP
+    );
+
+    @Bean
+    CacheManager cacheManager(OrderCacheProperties properties) {
+        final var cacheManager = new CaffeineCacheManager();
+        // Запрещаем создание кэшей "на лету", у каждого кэша должны быть TTL и ограничение размера
+        cacheManager.setCacheNames(List.of());
+        for (final var cacheName : ORDER_CACHES) {
+            final var spec = properties.getSpec(cacheName);
+            cacheManager.registerCustomCache(
+                    cacheName,
+                    Caffeine.newBuilder()
+                            .expireAfterWrite(spec.getTtl())
+                            // Вес записи - количество строк в результате, чтобы один большой список
+                            // не занимал столько же места в лимите, сколько маленький
+                            .maximumWeight(spec.getMaxWeight())
+                            .weigher((key, value) -> value instanceof Collection<?> collection
+                                    ? Math.max(1, collection.size())
+                                    : 1)
+                            // Статистика попаданий, промахов и времени загрузки публикуется в метриках cache.*
+                            .recordStats()
+                            .build()
+            );
+        }
+        return cacheManager;
+    }
+
+    // Стандартные метрики Caffeine публикуют время загрузки только для LoadingCache,
+    // а Spring загружает значения через Cache.get(key, loader), поэтому регистрируем его сами
+    @Bean
+    MeterBinder orderCacheLoadMetrics(CacheManager cacheManager) {
+        return registry -> ORDER_CACHES.forEach(cacheName -> FunctionTimer
+                .builder(
+                        "cache.load.duration",
+                        (Cache<?, ?>) cacheManager.getCache(cacheName).getNativeCache(),
+                        cache -> cache.stats().loadCount(),
+                        cache -> cache.stats().totalLoadTime(),
+                        TimeUnit.NANOSECONDS
+                )
+                .tags("cache", cacheName, "cache.manager", "cacheManager")
+                .description("Time spent loading query results into the cache on a miss")
+                .register(registry));
+    }
+}
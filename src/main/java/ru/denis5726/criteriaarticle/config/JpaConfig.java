@@ -2,12 +2,17 @@ package ru.denis5726.criteriaarticle.config;
 
 import org.hibernate.boot.model.FunctionContributions;
 import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.dialect.function.StandardSQLFunction;
 import org.hibernate.type.StandardBasicTypes;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.auditing.DateTimeProvider;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.denis5726.criteriaarticle.metrics.QueryExecutionListener;
 
 import java.time.ZonedDateTime;
 import java.util.Optional;
@@ -16,6 +21,7 @@ import java.util.Optional;
 @EnableJpaAuditing(dateTimeProviderRef = "currentZonedDateTimeProvider")
 public class JpaConfig implements FunctionContributor {
     public static final String BOOL_AND = "bool_and";
+    public static final String EQUALS_ANY = "equals_any";
 
     // Бин для получения текущего времени типа ZonedDateTime
     // для сущностей с аудитом AuditingEntityListener.class и полем с аннотацией @CreatedDate
@@ -24,6 +30,25 @@ public class JpaConfig implements FunctionContributor {
         return () -> Optional.of(ZonedDateTime.now());
     }
 
+    // Программная read-only транзакция для кода, который выполняется вне потока запроса
+    // (например, при потоковой выдаче ответа), где @Transactional контроллера уже не действует
+    @Bean
+    TransactionTemplate readOnlyTransactionTemplate(PlatformTransactionManager transactionManager) {
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        return transactionTemplate;
+    }
+
+    // Хуки для метрик запросов (QueryMetrics): время выполнения JDBC-команд и текст SQL.
+    // SessionEventListener Hibernate создаёт сам для каждой сессии, поэтому передаётся имя класса
+    @Bean
+    HibernatePropertiesCustomizer queryExecutionListenerCustomizer() {
+        return properties -> {
+            properties.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, QueryExecutionListener.class.getName());
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, new QueryExecutionListener());
+        };
+    }
+
     @Override
     public void contributeFunctions(FunctionContributions functionContributions) {
         // Регистрация функции bool_and в реестре функций
@@ -37,5 +62,14 @@ public class JpaConfig implements FunctionContributor {
                         StandardBasicTypes.BOOLEAN
                 )
         );
+        // equals_any(x, array) - условие x = any(array). cb.arrayContains в postgres превращается
+        // в array @> array[x], а такое условие не может использовать B-tree индекс по x
+        functionContributions.getFunctionRegistry().registerPattern(
+                EQUALS_ANY,
+                "(?1 = any(?2))",
+                functionContributions.getTypeConfiguration()
+                        .getBasicTypeRegistry()
+                        .resolve(StandardBasicTypes.BOOLEAN)
+        );
     }
 }
@@ -0,0 +1,100 @@
+package ru.denis5726.criteriaarticle.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import ru.denis5726.criteriaarticle.config.properties.ReadReplicaProperties;
+import ru.denis5726.criteriaarticle.datasource.ReadReplicaDataSource;
+import ru.denis5726.criteriaarticle.datasource.UsePrimary;
+import ru.denis5726.criteriaarticle.datasource.UsePrimaryInterceptor;
+
+// Read-only транзакции (@Transactional(readOnly = true) контроллера, readOnlyTransactionTemplate)
+// выполняются на репликах, остальные - в основной БД.
+// Spring отмечает соединение как read-only в начале транзакции, а LazyConnectionDataSourceProxy
+// берёт настоящее соединение только при первом запросе и по этой отметке выбирает источник.
+// Без app.read-replicas.enabled используется обычный DataSource из spring.datasource
+@Configuration
+@ConditionalOnProperty(prefix = "app.read-replicas", name = "enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    // Пул основной БД с настройками spring.datasource.hikari, как его создал бы Spring Boot
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        final var dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ReadReplicaDataSource.PRIMARY);
+        return dataSource;
+    }
+
+    @Bean
+    ReadReplicaDataSource readReplicaDataSource(
+            HikariDataSource primaryDataSource,
+            DataSourceProperties dataSourceProperties,
+            ReadReplicaProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${spring.application.name}") String applicationName
+    ) {
+        final var replicas = properties.getInstances().stream()
+                .map(instance -> {
+                    final var config = new HikariConfig();
+                    config.setPoolName(instance.getName());
+                    config.setJdbcUrl(instance.getUrl());
+                    config.setUsername(instance.getUsername() != null
+                            ? instance.getUsername()
+                            : dataSourceProperties.determineUsername());
+                    config.setPassword(instance.getPassword() != null
+                            ? instance.getPassword()
+                            : dataSourceProperties.determinePassword());
+                    config.setDriverClassName(dataSourceProperties.determineDriverClassName());
+                    config.setMaximumPoolSize(instance.getMaximumPoolSize());
+                    config.setConnectionTimeout(properties.getConnectionTimeout().toMillis());
+                    config.setReadOnly(true);
+                    // Приложение запускается и при недоступной реплике, она просто не используется
+                    config.setInitializationFailTimeout(-1);
+                    // По application_name соединения реплики видны в pg_stat_activity
+                    config.addDataSourceProperty("ApplicationName", applicationName + "/" + instance.getName());
+                    config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+                    return new HikariDataSource(config);
+                })
+                .toList();
+        return new ReadReplicaDataSource(primaryDataSource, replicas, properties, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    LazyConnectionDataSourceProxy dataSource(
+            HikariDataSource primaryDataSource,
+            ReadReplicaDataSource readReplicaDataSource
+    ) {
+        final var dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(readReplicaDataSource);
+        return dataSource;
+    }
+
+    // Выполняется раньше транзакций, чтобы отметка @UsePrimary уже стояла к первому запросу
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor usePrimaryAdvisor() {
+        final var pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(UsePrimary.class, true))
+                .union(AnnotationMatchingPointcut.forMethodAnnotation(UsePrimary.class));
+        final var advisor = new DefaultPointcutAdvisor(pointcut, new UsePrimaryInterceptor());
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+}
@@ -0,0 +1,12 @@
+package ru.denis5726.criteriaarticle.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Методы @Async выполняются в applicationTaskExecutor
+@Configuration
+@EnableAsync
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,30 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "app.bulkhead")
+public class BulkheadProperties {
+    private boolean enabled = true;
+    // Настройки для ограничений, которых нет в endpoints
+    private Limit defaults = new Limit();
+    // Настройки по названию ограничения (значение аннотации @Bulkhead)
+    private Map<String, Limit> endpoints = new HashMap<>();
+
+    public Limit getLimit(String name) {
+        return endpoints.getOrDefault(name, defaults);
+    }
+
+    @Data
+    public static class Limit {
+        // Сколько запросов к эндпоинту может выполняться одновременно
+        private int maxConcurrent = 4;
+        // Сколько запрос может ждать освобождения места, 0 - сразу отвечать 503
+        private Duration maxWait = Duration.ZERO;
+    }
+}
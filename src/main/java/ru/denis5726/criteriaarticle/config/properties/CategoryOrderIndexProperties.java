@@ -0,0 +1,24 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.category-order-index")
+public class CategoryOrderIndexProperties {
+    // Без индекса findOrderWithProductInCategories выполняется запросом к БД
+    private boolean enabled = true;
+    // Заказы, созданные за это время, перечитываются при каждом обновлении: номера из последовательности
+    // выдаются до фиксации, и транзакция с меньшим номером может зафиксироваться позже прочитанных
+    private Duration recentWindow = Duration.ofMinutes(1);
+    // Если битовые карты занимают больше, индекс отключается до следующего перестроения
+    private DataSize maxSize = DataSize.ofMegabytes(256);
+    // Сколько строк драйвер postgres забирает из курсора за один раз при перестроении
+    private int fetchSize = 10_000;
+    // Заказы по найденным номерам читаются пачками не больше этого: номера передаются массивом-параметром,
+    // и на сотнях тысяч номеров он один занимает мегабайты в запросе
+    private int ordinalsBatchSize = 10_000;
+}
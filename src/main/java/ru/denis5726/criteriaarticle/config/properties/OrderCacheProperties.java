@@ -0,0 +1,28 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "app.order-cache")
+public class OrderCacheProperties {
+    // Настройки для кэшей, которых нет в caches
+    private Spec defaults = new Spec();
+    // Настройки по названию кэша (совпадает с названием метода OrderRepository)
+    private Map<String, Spec> caches = new HashMap<>();
+
+    public Spec getSpec(String cacheName) {
+        return caches.getOrDefault(cacheName, defaults);
+    }
+
+    @Data
+    public static class Spec {
+        private Duration ttl = Duration.ofSeconds(30);
+        // Суммарное количество строк проекций во всех записях кэша
+        private long maxWeight = 100_000;
+    }
+}
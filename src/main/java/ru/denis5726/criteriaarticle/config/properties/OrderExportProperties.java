@@ -0,0 +1,16 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+@Data
+@ConfigurationProperties(prefix = "app.order-export")
+public class OrderExportProperties {
+    // Строк в одном record batch Arrow. Память выгрузки пропорциональна этому размеру, а не объёму истории
+    private int batchRows = 65_536;
+    // Сколько строк драйвер postgres забирает из курсора за один раз
+    private int fetchSize = 5_000;
+    // Ограничение памяти вне кучи для буферов Arrow одной выгрузки
+    private DataSize maxAllocation = DataSize.ofMegabytes(256);
+}
@@ -0,0 +1,17 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.order-filter")
+public class OrderFilterProperties {
+    // Количество заказов в ответе, если клиент его не передал
+    private int defaultLimit = 100;
+    private int maxLimit = 1000;
+    // Наибольший интервал времени создания, который сам по себе, без магазина и категории,
+    // считается достаточно узким для выборки по индексу order(created_at)
+    private Duration maxCreatedRange = Duration.ofDays(92);
+}
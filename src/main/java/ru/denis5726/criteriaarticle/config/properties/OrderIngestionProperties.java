@@ -0,0 +1,19 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import ru.denis5726.criteriaarticle.model.OrderIngestionMode;
+
+@Data
+@ConfigurationProperties(prefix = "app.order-ingestion")
+public class OrderIngestionProperties {
+    // Способ записи, если клиент его не передал
+    private OrderIngestionMode defaultMode = OrderIngestionMode.COPY;
+    // Верхняя граница количества заказов в одной пачке (одна транзакция)
+    private int maxOrders = 50_000;
+    // Через сколько заказов в режиме BATCH сбрасывать сущности в БД и очищать контекст персистентности.
+    // Должно быть не меньше hibernate.jdbc.batch_size, иначе пакеты будут неполными
+    private int flushEvery = 500;
+    // Размер буфера строк, после которого данные отправляются в COPY
+    private int copyBufferSize = 1 << 16;
+}
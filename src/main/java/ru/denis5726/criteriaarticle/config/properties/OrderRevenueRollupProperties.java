@@ -0,0 +1,16 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.order-revenue-rollup")
+public class OrderRevenueRollupProperties {
+    // Наибольший интервал ряда, который собирается из часов: ряд по часам и ряд во временной зоне,
+    // отличной от app.rollup.time-zone. Остальные ряды читаются из дней и месяцев без ограничения
+    private Duration maxHourRange = Duration.ofDays(31);
+    // Сколько последних дней сверяется по расписанию (с начала месяца, в который попадает первый из них)
+    private int reconcileDays = 3;
+}
@@ -0,0 +1,24 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.order-status-feed")
+public class OrderStatusFeedProperties {
+    // Без ленты соединение для LISTEN не открывается, а /orderStatusFeed отвечает 503
+    private boolean enabled = true;
+    // Как часто накопленные изменения отправляются подписчикам. Изменения за это время объединяются
+    private Duration flushInterval = Duration.ofMillis(200);
+    // Комментарий в пустом потоке, по ошибке записи которого обнаруживаются отключившиеся клиенты
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+    // После этого подписка закрывается, EventSource переподключается и получает новый снимок
+    private Duration subscriptionTimeout = Duration.ofMinutes(30);
+    private int maxSubscribers = 10_000;
+    // Изменений заказов, ожидающих отправки медленному клиенту. При превышении клиенту отправляется reset
+    private int maxPendingChanges = 10_000;
+    // Пауза перед повторным подключением слушателя к БД после ошибки
+    private Duration reconnectDelay = Duration.ofSeconds(5);
+}
@@ -0,0 +1,24 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.query-jobs")
+public class QueryJobProperties {
+    // Сколько заданий выполняется одновременно, остальные ждут в очереди
+    private int maxConcurrent = 2;
+    // При заполненной очереди новые задания отклоняются с 503
+    private int queueCapacity = 16;
+    // statement_timeout для запроса задания, 0 - без ограничения
+    private Duration statementTimeout = Duration.ofMinutes(5);
+    // Сколько хранится завершённое задание. Повторная отправка с теми же параметрами в течение этого времени
+    // возвращает уже выполненное задание, если данные заказов с тех пор не менялись
+    private Duration resultTtl = Duration.ofMinutes(10);
+    // Суммарное количество строк в результатах хранимых заданий
+    private long maxResultWeight = 200_000;
+    // Предел ожидания результата в GET /jobs/{id}/result
+    private Duration maxWait = Duration.ofSeconds(30);
+}
@@ -0,0 +1,15 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "app.query-metrics")
+public class QueryMetricsProperties {
+    // Запросы дольше порога пишутся в журнал вместе с SQL и параметрами (0 - журнал выключен)
+    private Duration slowQueryThreshold = Duration.ofMillis(500);
+    // Гистограмма времени выполнения для расчёта перцентилей на стороне системы мониторинга
+    private boolean percentileHistogram = true;
+}
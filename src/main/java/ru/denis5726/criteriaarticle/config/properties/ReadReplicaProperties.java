@@ -0,0 +1,40 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "app.read-replicas")
+public class ReadReplicaProperties {
+    // Выключено - все запросы идут в основную БД (spring.datasource)
+    private boolean enabled = false;
+    private Balancing balancing = Balancing.ROUND_ROBIN;
+    // Реплика с большим отставанием не используется, пока не догонит основную БД.
+    // Это же и предел устаревания данных, которые read-only запросы (и кэши их результатов) могут увидеть
+    private Duration maxLag = Duration.ofSeconds(10);
+    private Duration lagCheckInterval = Duration.ofSeconds(5);
+    // Сколько запрос ждёт соединения с репликой, прежде чем уйти в основную БД
+    private Duration connectionTimeout = Duration.ofSeconds(1);
+    private List<Instance> instances = new ArrayList<>();
+
+    public enum Balancing {
+        ROUND_ROBIN,
+        // Реплика с наименьшим числом занятых соединений в пуле
+        LEAST_CONNECTIONS
+    }
+
+    @Data
+    public static class Instance {
+        // Имя в метриках, журнале и application_name соединений
+        private String name;
+        private String url;
+        // Если не заданы, берутся из spring.datasource
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+}
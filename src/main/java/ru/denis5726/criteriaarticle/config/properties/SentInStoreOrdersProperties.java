@@ -0,0 +1,17 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.sent-in-store-orders")
+public class SentInStoreOrdersProperties {
+    // Размер страницы, если клиент его не передал
+    private int defaultPageSize = 100;
+    // Верхняя граница размера страницы, чтобы один запрос не поднимал в память весь магазин
+    private int maxPageSize = 1000;
+    // Сколько строк драйвер postgres забирает из открытого курсора за один раз при потоковой выдаче
+    private int fetchSize = 500;
+    // Как часто сбрасывать буфер ответа при потоковой выдаче (в строках)
+    private int flushEvery = 100;
+}
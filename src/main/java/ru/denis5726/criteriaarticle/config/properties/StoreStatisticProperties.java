@@ -0,0 +1,17 @@
+package ru.denis5726.criteriaarticle.config.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "app.store-statistic")
+public class StoreStatisticProperties {
+    // На сколько диапазонов id магазинов делится запрос /storeStatistic, 1 - один запрос без деления
+    private int shards = 1;
+    // Сколько диапазонов выполняется одновременно, каждый на своём соединении. Вместе с ограничением
+    // app.bulkhead для storeStatistic должно оставлять соединения пула остальным запросам
+    private int parallelism = 4;
+    // Количество магазинов в /storeStatistic/top, если limit не указан, и его верхняя граница
+    private int defaultTopLimit = 20;
+    private int maxTopLimit = 1000;
+}
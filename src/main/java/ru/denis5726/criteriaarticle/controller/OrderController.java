@@ -1,20 +1,46 @@
 package ru.denis5726.criteriaarticle.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.denis5726.criteriaarticle.config.properties.OrderFilterProperties;
+import ru.denis5726.criteriaarticle.config.properties.SentInStoreOrdersProperties;
+import ru.denis5726.criteriaarticle.config.properties.StoreStatisticProperties;
 import ru.denis5726.criteriaarticle.entity.Order;
 import ru.denis5726.criteriaarticle.model.OrderDayStatisticProjection;
+import ru.denis5726.criteriaarticle.model.OrderFilter;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBreakdown;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBucketProjection;
+import ru.denis5726.criteriaarticle.model.OrderRevenueGranularity;
+import ru.denis5726.criteriaarticle.model.OrderSentInStoreCursor;
+import ru.denis5726.criteriaarticle.model.OrderSentInStorePage;
 import ru.denis5726.criteriaarticle.model.OrderSentInStoreProjection;
 import ru.denis5726.criteriaarticle.model.OrderShortInfoProjection;
 import ru.denis5726.criteriaarticle.model.OrderStoreStatisticProjection;
+import ru.denis5726.criteriaarticle.model.OrderSummaryProjection;
 import ru.denis5726.criteriaarticle.model.OrderWithTotalPriceProjection;
+import ru.denis5726.criteriaarticle.model.StoreStatisticWeights;
 import ru.denis5726.criteriaarticle.repository.OrderRepository;
+import ru.denis5726.criteriaarticle.service.OrderRevenueSeriesService;
+import ru.denis5726.criteriaarticle.web.Bulkhead;
+import ru.denis5726.criteriaarticle.web.StreamingResponseWriters;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.UUID;
 
@@ -23,13 +49,87 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class OrderController {
     private final OrderRepository repository;
+    private final SentInStoreOrdersProperties sentInStoreOrdersProperties;
+    private final OrderFilterProperties orderFilterProperties;
+    private final StoreStatisticProperties storeStatisticProperties;
+    private final OrderRevenueSeriesService orderRevenueSeriesService;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final StreamingResponseWriters responseWriters;
 
     @GetMapping("/sentInStoreOrders")
+    @Bulkhead("sentInStoreOrders")
     public List<OrderSentInStoreProjection> findSentInStoreOrdersByStoreId(@RequestParam UUID storeId) {
         return repository.findSentInStoreOrdersByStoreId(storeId);
     }
 
+    @GetMapping("/sentInStoreOrders/page")
+    @Bulkhead("sentInStoreOrders")
+    public OrderSentInStorePage findSentInStoreOrdersPageByStoreId(
+            @RequestParam UUID storeId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size
+    ) {
+        final var pageSize = Math.clamp(
+                size == null ? sentInStoreOrdersProperties.getDefaultPageSize() : size,
+                1,
+                sentInStoreOrdersProperties.getMaxPageSize()
+        );
+        // Запрашиваем на одну строку больше, чтобы понять, есть ли следующая страница
+        final var rows = repository.findSentInStoreOrdersByStoreId(storeId, decodeCursor(cursor), pageSize + 1);
+        if (rows.size() <= pageSize) {
+            return new OrderSentInStorePage(rows, null);
+        }
+        final var content = rows.subList(0, pageSize);
+        return new OrderSentInStorePage(content, OrderSentInStoreCursor.of(content.getLast()).encode());
+    }
+
+    // Строки пишутся в ответ прямо из открытого курсора, поэтому расход памяти не зависит от размера магазина.
+    // По умолчанию NDJSON (по одному JSON-объекту на строку), с Accept: application/cbor-seq - значения CBOR
+    @GetMapping("/sentInStoreOrders/stream")
+    @Bulkhead("sentInStoreOrdersStream")
+    public ResponseEntity<StreamingResponseBody> streamSentInStoreOrdersByStoreId(
+            @RequestParam UUID storeId,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept
+    ) {
+        final var mediaType = responseWriters.negotiate(accept);
+        final StreamingResponseBody body = outputStream -> {
+            // Тело ответа пишется асинхронно, уже после выхода из метода контроллера,
+            // поэтому транзакцию для курсора открываем здесь
+            readOnlyTransactionTemplate.executeWithoutResult(status -> {
+                try (var generator = responseWriters.createGenerator(outputStream, mediaType);
+                     var orders = repository.streamSentInStoreOrdersByStoreId(
+                             storeId,
+                             sentInStoreOrdersProperties.getFetchSize()
+                     )) {
+                    var written = 0;
+                    for (final var iterator = orders.iterator(); iterator.hasNext(); ) {
+                        // Поля в том же порядке и с теми же именами, что и в OrderSentInStoreProjection
+                        final var order = iterator.next();
+                        generator.writeStartObject();
+                        StreamingResponseWriters.writeUuidField(generator, "id", (UUID) order[0]);
+                        generator.writeFieldName("createdAt");
+                        generator.writeObject(order[1]);
+                        generator.writeFieldName("totalPrice");
+                        generator.writeNumber((BigDecimal) order[2]);
+                        generator.writeEndObject();
+                        written++;
+                        // Первую строку отправляем сразу, дальше сбрасываем буфер пачками
+                        if (written == 1 || written % sentInStoreOrdersProperties.getFlushEvery() == 0) {
+                            generator.flush();
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .body(body);
+    }
+
     @GetMapping("/storeStatistic")
+    @Bulkhead("storeStatistic")
     public List<OrderStoreStatisticProjection> findStoreStatistic(
             @RequestParam BigDecimal lowerBound,
             @RequestParam BigDecimal upperBound
@@ -37,7 +137,35 @@ public class OrderController {
         return repository.findStoreStatistic(lowerBound, upperBound);
     }
 
+    // Первые limit магазинов из /storeStatistic. Веса по умолчанию 1, и порядок тот же, что в /storeStatistic
+    @GetMapping("/storeStatistic/top")
+    @Bulkhead("storeStatistic")
+    public List<OrderStoreStatisticProjection> findTopStoreStatistic(
+            @RequestParam BigDecimal lowerBound,
+            @RequestParam BigDecimal upperBound,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "1") double completedWeight,
+            @RequestParam(defaultValue = "1") double canceledWeight,
+            @RequestParam(defaultValue = "1") double rejectedWeight
+    ) {
+        if (!Double.isFinite(completedWeight) || !Double.isFinite(canceledWeight) || !Double.isFinite(rejectedWeight)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Weights must be finite numbers");
+        }
+        final var resultLimit = Math.clamp(
+                limit == null ? storeStatisticProperties.getDefaultTopLimit() : limit,
+                1,
+                storeStatisticProperties.getMaxTopLimit()
+        );
+        return repository.findTopStoreStatistic(
+                lowerBound,
+                upperBound,
+                new StoreStatisticWeights(completedWeight, canceledWeight, rejectedWeight),
+                resultLimit
+        );
+    }
+
     @GetMapping("/ordersWithProductInCategories")
+    @Bulkhead("ordersWithProductInCategories")
     public List<OrderShortInfoProjection> findOrderWithProductInCategories(
             @RequestParam(name = "categoryName") List<String> categoryNames
     ) {
@@ -45,6 +173,7 @@ public class OrderController {
     }
 
     @GetMapping("/ordersWithProductCategory")
+    @Bulkhead("ordersWithProductCategory")
     public List<OrderWithTotalPriceProjection> findOrderWithProductCategory(
             @RequestParam String categoryName
     ) {
@@ -52,10 +181,77 @@ public class OrderController {
     }
 
     @GetMapping("/orderDayStatistic")
+    @Bulkhead("orderDayStatistic")
     public List<OrderDayStatisticProjection> findOrderDayStatistic(
             @RequestParam LocalDate startDate,
             @RequestParam LocalDate endDate
     ) {
         return repository.findOrderDayStatistic(startDate, endDate);
     }
+
+    // Ряд выручки по часам, дням, неделям или месяцам в зоне timeZone (по умолчанию app.rollup.time-zone),
+    // всего или по магазинам или категориям товаров
+    @GetMapping("/orderRevenueSeries")
+    @Bulkhead("orderRevenueSeries")
+    public List<OrderRevenueBucketProjection> findOrderRevenueSeries(
+            @RequestParam OrderRevenueGranularity granularity,
+            @RequestParam LocalDate startDate,
+            @RequestParam LocalDate endDate,
+            @RequestParam(required = false) ZoneId timeZone,
+            @RequestParam(defaultValue = "TOTAL") OrderRevenueBreakdown breakdown
+    ) {
+        return orderRevenueSeriesService.findSeries(
+                granularity,
+                breakdown,
+                startDate,
+                endDate,
+                timeZone
+        );
+    }
+
+    // Любое сочетание условий, но хотя бы одно из них - магазин, категория или интервал времени создания
+    // не длиннее app.order-filter.max-created-range, иначе 400
+    @GetMapping("/orders")
+    @Bulkhead("orders")
+    public List<OrderSummaryProjection> findOrders(
+            @RequestParam(required = false) UUID storeId,
+            @RequestParam(required = false) UUID customerId,
+            @RequestParam(name = "status", required = false) List<Order.Status> statuses,
+            @RequestParam(required = false) BigDecimal minTotalPrice,
+            @RequestParam(required = false) BigDecimal maxTotalPrice,
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime createdFrom,
+            @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) ZonedDateTime createdTo,
+            @RequestParam(required = false) String categoryName,
+            @RequestParam(required = false) Integer limit
+    ) {
+        final var filter = OrderFilter.builder()
+                .storeId(storeId)
+                .customerId(customerId)
+                .statuses(statuses)
+                .minTotalPrice(minTotalPrice)
+                .maxTotalPrice(maxTotalPrice)
+                .createdFrom(createdFrom)
+                .createdTo(createdTo)
+                .categoryName(categoryName)
+                .build();
+        final var resultLimit = Math.clamp(
+                limit == null ? orderFilterProperties.getDefaultLimit() : limit,
+                1,
+                orderFilterProperties.getMaxLimit()
+        );
+        return repository.findOrders(filter, resultLimit);
+    }
+
+    private OrderSentInStoreCursor decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return OrderSentInStoreCursor.decode(cursor);
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package ru.denis5726.criteriaarticle.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.denis5726.criteriaarticle.export.OrderArrowExporter;
+import ru.denis5726.criteriaarticle.web.Bulkhead;
+
+import java.nio.channels.Channels;
+
+@RestController
+@RequiredArgsConstructor
+public class OrderExportController {
+    private final OrderArrowExporter exporter;
+
+    // Полная история позиций заказов для аналитики в формате Arrow IPC (stream),
+    // читается, например, pyarrow.ipc.open_stream
+    @GetMapping("/export/orders")
+    @Bulkhead("orderExport")
+    public ResponseEntity<StreamingResponseBody> exportOrders() {
+        final StreamingResponseBody body = outputStream -> exporter.export(Channels.newChannel(outputStream));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(OrderArrowExporter.MEDIA_TYPE))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("orders.arrows")
+                        .build()
+                        .toString())
+                .body(body);
+    }
+}
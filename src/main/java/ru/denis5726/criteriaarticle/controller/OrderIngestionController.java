@@ -0,0 +1,31 @@
+package ru.denis5726.criteriaarticle.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.denis5726.criteriaarticle.config.properties.OrderIngestionProperties;
+import ru.denis5726.criteriaarticle.model.OrderIngestionMode;
+import ru.denis5726.criteriaarticle.model.OrderIngestionRequest;
+import ru.denis5726.criteriaarticle.model.OrderIngestionResult;
+import ru.denis5726.criteriaarticle.service.OrderIngestionService;
+import ru.denis5726.criteriaarticle.web.Bulkhead;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class OrderIngestionController {
+    private final OrderIngestionService ingestionService;
+    private final OrderIngestionProperties properties;
+
+    @PostMapping("/orders/bulk")
+    @Bulkhead("orderIngestion")
+    public OrderIngestionResult ingest(
+            @RequestBody List<OrderIngestionRequest> orders,
+            @RequestParam(required = false) OrderIngestionMode mode
+    ) {
+        return ingestionService.ingest(orders, mode == null ? properties.getDefaultMode() : mode);
+    }
+}
@@ -0,0 +1,24 @@
+package ru.denis5726.criteriaarticle.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.denis5726.criteriaarticle.feed.OrderStatusFeed;
+
+import java.util.UUID;
+
+@RestController
+@RequiredArgsConstructor
+public class OrderStatusFeedController {
+    private final OrderStatusFeed feed;
+
+    // Изменения счётчиков магазина и заказов в статусе SENT_TO_STORE без повторных запросов
+    // /storeStatistic и /sentInStoreOrders. Без storeId - по всем магазинам
+    @GetMapping(value = "/orderStatusFeed", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribe(@RequestParam(required = false) UUID storeId) {
+        return feed.subscribe(storeId);
+    }
+}
@@ -0,0 +1,84 @@
+package ru.denis5726.criteriaarticle.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DurationFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.denis5726.criteriaarticle.model.QueryJobState;
+import ru.denis5726.criteriaarticle.model.QueryJobStatus;
+import ru.denis5726.criteriaarticle.model.QueryJobType;
+import ru.denis5726.criteriaarticle.repository.OrderRepository;
+import ru.denis5726.criteriaarticle.service.QueryJobService;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+// Те же запросы, что /storeStatistic и /ordersWithProductCategory, но в виде заданий:
+// POST возвращает id задания, результат забирается через GET /jobs/{id}/result,
+// DELETE /jobs/{id} отменяет задание вместе с выполняющимся запросом
+@RestController
+@RequiredArgsConstructor
+public class QueryJobController {
+    private final QueryJobService jobService;
+    private final OrderRepository repository;
+
+    @PostMapping("/jobs/storeStatistic")
+    public ResponseEntity<QueryJobStatus> submitStoreStatistic(
+            @RequestParam BigDecimal lowerBound,
+            @RequestParam BigDecimal upperBound
+    ) {
+        return submitted(jobService.submit(
+                QueryJobType.STORE_STATISTIC,
+                Map.of("lowerBound", lowerBound, "upperBound", upperBound),
+                () -> repository.findStoreStatistic(lowerBound, upperBound)
+        ));
+    }
+
+    @PostMapping("/jobs/ordersWithProductCategory")
+    public ResponseEntity<QueryJobStatus> submitOrderWithProductCategory(@RequestParam String categoryName) {
+        return submitted(jobService.submit(
+                QueryJobType.ORDERS_WITH_PRODUCT_CATEGORY,
+                Map.of("categoryName", categoryName),
+                () -> repository.findOrderWithProductCategory(categoryName)
+        ));
+    }
+
+    @GetMapping("/jobs/{id}")
+    public QueryJobStatus getStatus(@PathVariable UUID id) {
+        return jobService.getStatus(id);
+    }
+
+    // С wait запрос ждёт завершения задания (не дольше app.query-jobs.max-wait), не занимая поток.
+    // Пока задание не завершено - 202 со статусом, после неудачи или отмены - 409
+    @GetMapping("/jobs/{id}/result")
+    public CompletableFuture<ResponseEntity<?>> getResult(
+            @PathVariable UUID id,
+            @RequestParam(defaultValue = "0s") @DurationFormat(style = DurationFormat.Style.SIMPLE) Duration wait
+    ) {
+        return jobService.awaitFinished(id, wait).thenApply(status -> status.getState().isFinished()
+                ? ResponseEntity.ok(jobService.getResult(id))
+                : ResponseEntity.accepted().header(HttpHeaders.RETRY_AFTER, "1").body(status));
+    }
+
+    @DeleteMapping("/jobs/{id}")
+    public QueryJobStatus cancel(@PathVariable UUID id) {
+        return jobService.cancel(id);
+    }
+
+    private static ResponseEntity<QueryJobStatus> submitted(QueryJobStatus status) {
+        final var response = status.getState() == QueryJobState.COMPLETED
+                ? ResponseEntity.ok()
+                : ResponseEntity.accepted();
+        return response.location(URI.create("/jobs/" + status.getId())).body(status);
+    }
+}
@@ -0,0 +1,178 @@
+package ru.denis5726.criteriaarticle.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import ru.denis5726.criteriaarticle.config.properties.ReadReplicaProperties;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Источник соединений для read-only транзакций: одна из доступных реплик по выбранной балансировке,
+// а если доступных нет (отставание больше max-lag, реплика не отвечает, в пуле нет свободных соединений)
+// или поток отмечен @UsePrimary - основная БД.
+// Метрики: datasource.replica.lag, datasource.replica.available (тег replica),
+// datasource.routing (тег target - имя реплики или primary)
+@Slf4j
+public class ReadReplicaDataSource extends AbstractDataSource implements Closeable {
+    public static final String PRIMARY = "primary";
+
+    // Отставание считается по времени последней применённой транзакции. Если реплика получает WAL
+    // и уже применила всё полученное, она не отстаёт, даже если в основную БД давно ничего не писали.
+    // После перезапуска реплики позиция получения - начало сегмента WAL и может быть меньше позиции применения
+    private static final String LAG_QUERY = """
+            select case
+                       when not pg_is_in_recovery() then 0
+                       when pg_last_wal_receive_lsn() <= pg_last_wal_replay_lsn()
+                           and exists (select from pg_stat_wal_receiver where status = 'streaming') then 0
+                       else extract(epoch from now() - pg_last_xact_replay_timestamp())
+                       end
+            """;
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final ReadReplicaProperties properties;
+    private final Counter primaryConnections;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReadReplicaDataSource(
+            HikariDataSource primary,
+            List<HikariDataSource> replicaDataSources,
+            ReadReplicaProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.primary = primary;
+        this.properties = properties;
+        this.primaryConnections = meterRegistry.counter("datasource.routing", "target", PRIMARY);
+        this.replicas = replicaDataSources.stream()
+                .map(dataSource -> new Replica(dataSource, meterRegistry))
+                .toList();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!UsePrimaryInterceptor.isActive()) {
+            final var replica = choose();
+            if (replica != null) {
+                try {
+                    final var connection = replica.dataSource.getConnection();
+                    replica.connections.increment();
+                    return connection;
+                } catch (SQLException e) {
+                    // До следующей проверки отставания реплика не используется
+                    replica.markUnavailable(e.getMessage());
+                }
+            }
+        }
+        primaryConnections.increment();
+        return primary.getConnection();
+    }
+
+    // Реплики настроены со своими учётными данными, поэтому соединение с явно указанными
+    // идёт в основную БД, как и запись
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        primaryConnections.increment();
+        return primary.getConnection(username, password);
+    }
+
+    // Первая проверка выполняется при запуске, до неё read-only транзакции идут в основную БД
+    @Scheduled(fixedDelayString = "${app.read-replicas.lag-check-interval}")
+    public void checkLag() {
+        for (final var replica : replicas) {
+            try (var connection = replica.dataSource.getConnection();
+                 var statement = connection.createStatement();
+                 var resultSet = statement.executeQuery(LAG_QUERY)) {
+                resultSet.next();
+                final var lag = resultSet.getDouble(1);
+                if (resultSet.wasNull()) {
+                    // Реплика не получает WAL и ещё не применила ни одной транзакции
+                    replica.markUnavailable("replication state is unknown");
+                } else {
+                    replica.updateLag(lag, properties.getMaxLag().toMillis() / 1000.0);
+                }
+            } catch (SQLException e) {
+                replica.lagSeconds = Double.NaN;
+                replica.markUnavailable(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    private Replica choose() {
+        final var available = replicas.stream().filter(Replica::isAvailable).toList();
+        if (available.isEmpty()) {
+            return null;
+        }
+        return switch (properties.getBalancing()) {
+            case ROUND_ROBIN -> available.get(Math.floorMod(nextReplica.getAndIncrement(), available.size()));
+            case LEAST_CONNECTIONS -> available.stream()
+                    .min(Comparator.comparingInt(Replica::activeConnections))
+                    .orElseThrow();
+        };
+    }
+
+    private static class Replica {
+        private final HikariDataSource dataSource;
+        private final Counter connections;
+        // null до первой проверки
+        private volatile Boolean available;
+        private volatile double lagSeconds = Double.NaN;
+
+        Replica(HikariDataSource dataSource, MeterRegistry meterRegistry) {
+            this.dataSource = dataSource;
+            this.connections = meterRegistry.counter("datasource.routing", "target", name());
+            Gauge.builder("datasource.replica.lag", this, replica -> replica.lagSeconds)
+                    .tag("replica", name())
+                    .baseUnit("seconds")
+                    .description("Replication lag of the read replica")
+                    .register(meterRegistry);
+            Gauge.builder("datasource.replica.available", this, replica -> replica.isAvailable() ? 1 : 0)
+                    .tag("replica", name())
+                    .description("Whether read-only transactions are routed to the replica")
+                    .register(meterRegistry);
+        }
+
+        String name() {
+            return dataSource.getPoolName();
+        }
+
+        boolean isAvailable() {
+            return Boolean.TRUE.equals(available);
+        }
+
+        int activeConnections() {
+            final var pool = dataSource.getHikariPoolMXBean();
+            return pool == null ? 0 : pool.getActiveConnections();
+        }
+
+        void updateLag(double lag, double maxLag) {
+            lagSeconds = lag;
+            if (lag > maxLag) {
+                markUnavailable("replication lag is " + lag + " s");
+            } else if (!isAvailable()) {
+                available = true;
+                log.info("Read replica {} is available, replication lag is {} s", name(), lag);
+            }
+        }
+
+        void markUnavailable(String reason) {
+            if (!Boolean.FALSE.equals(available)) {
+                available = false;
+                log.warn("Read replica {} is unavailable, falling back to the primary: {}", name(), reason);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package ru.denis5726.criteriaarticle.datasource;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Read-only транзакции внутри метода (или всех методов класса) выполняются в основной БД, а не на реплике.
+// Нужно, когда запрос должен увидеть только что зафиксированные изменения (read-your-writes)
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface UsePrimary {
+}
@@ -0,0 +1,30 @@
+package ru.denis5726.criteriaarticle.datasource;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+
+// Отмечает поток на время вызова метода с @UsePrimary. Соединение берётся лениво, при первом запросе,
+// поэтому отметка действует и для транзакции, открытой тем же методом
+public class UsePrimaryInterceptor implements MethodInterceptor {
+    private static final ThreadLocal<Integer> DEPTH = ThreadLocal.withInitial(() -> 0);
+
+    public static boolean isActive() {
+        return DEPTH.get() > 0;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        // Счётчик, а не флаг: вложенные вызовы не снимают отметку внешнего
+        DEPTH.set(DEPTH.get() + 1);
+        try {
+            return invocation.proceed();
+        } finally {
+            final var depth = DEPTH.get() - 1;
+            if (depth == 0) {
+                DEPTH.remove();
+            } else {
+                DEPTH.set(depth);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ru.denis5726.criteriaarticle.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Выручка заказов за день их создания.
+// Таблица поддерживается триггерами БД (см. 00004__DAILY_ORDER_REVENUE.xml), из приложения только читается.
+// Строка дня в таблице разделена на слоты (00013__DAILY_ORDER_REVENUE_SLOTS.xml), сущность - их сумма
+@Entity
+@Table(name = "daily_order_revenue_total")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Immutable
+public class DailyOrderRevenue {
+    @Id
+    private LocalDate day;
+    private BigDecimal totalAmount;
+    private Long itemCount;
+}
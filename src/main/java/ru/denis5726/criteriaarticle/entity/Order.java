@@ -1,5 +1,6 @@
 package ru.denis5726.criteriaarticle.entity;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
@@ -15,7 +16,9 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+import ru.denis5726.criteriaarticle.event.OrderDataEntityListener;
 
+import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -27,7 +30,7 @@ import java.util.UUID;
 @AllArgsConstructor
 @Builder
 @Table(name = "`order`")
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, OrderDataEntityListener.class})
 public class Order {
     @Id
     @GeneratedValue
@@ -41,6 +44,16 @@ public class Order {
     @OneToMany(mappedBy = "order")
     private List<OrderItem> items;
     private ZonedDateTime finishedAt;
+    // Стоимость и количество позиций поддерживают триггеры order_item, приложение их не записывает
+    @Column(insertable = false, updatable = false)
+    private BigDecimal totalAmount;
+    @Column(insertable = false, updatable = false)
+    private Long itemCount;
+    // Порядковый номер из последовательности order_ordinal_seq для битовых карт CategoryOrderIndex
+    @Column(insertable = false, updatable = false)
+    private Integer ordinal;
+    // Ключ секционирования таблицы по месяцам. В БД первичный ключ (id, created_at),
+    // но id уникален и сам по себе, поэтому идентификатором сущности остаётся он
     @CreatedDate
     private ZonedDateTime createdAt;
 
@@ -1,6 +1,7 @@
 package ru.denis5726.criteriaarticle.entity;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
@@ -10,7 +11,9 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import ru.denis5726.criteriaarticle.event.OrderDataEntityListener;
 
+import java.math.BigDecimal;
 import java.util.UUID;
 
 @Entity
@@ -19,6 +22,7 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@EntityListeners(OrderDataEntityListener.class)
 public class OrderItem {
     @Id
     @GeneratedValue
@@ -30,4 +34,6 @@ public class OrderItem {
     @JoinColumn
     private Product product;
     private Long quantity;
+    // Цена товара на момент покупки, по ней считается стоимость заказа
+    private BigDecimal price;
 }
@@ -0,0 +1,60 @@
+package ru.denis5726.criteriaarticle.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Immutable;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBreakdown;
+import ru.denis5726.criteriaarticle.model.OrderRevenueGranularity;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+// Выручка заказов за час, день или месяц их создания, всего, по магазину или по категории товаров.
+// Таблица поддерживается триггерами БД (см. 00011__ORDER_REVENUE_ROLLUP.xml), из приложения только читается.
+// Строки в таблице разделены на слоты (00014__ORDER_REVENUE_ROLLUP_SLOTS.xml), сущность - их сумма
+@Entity
+@Table(name = "order_revenue_rollup_total")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Immutable
+@IdClass(OrderRevenueRollup.Key.class)
+public class OrderRevenueRollup {
+    // Нулевой uuid в key строк разреза TOTAL
+    public static final UUID TOTAL_KEY = new UUID(0L, 0L);
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    private OrderRevenueGranularity granularity;
+    @Id
+    @Enumerated(EnumType.STRING)
+    private OrderRevenueBreakdown breakdown;
+    @Id
+    private OffsetDateTime bucket;
+    @Id
+    private UUID key;
+    private BigDecimal totalAmount;
+    private Long itemCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private OrderRevenueGranularity granularity;
+        private OrderRevenueBreakdown breakdown;
+        private OffsetDateTime bucket;
+        private UUID key;
+    }
+}
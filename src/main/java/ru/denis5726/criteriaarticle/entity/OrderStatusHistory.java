@@ -15,6 +15,7 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+import ru.denis5726.criteriaarticle.event.OrderDataEntityListener;
 
 import java.time.ZonedDateTime;
 import java.util.UUID;
@@ -25,7 +26,7 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, OrderDataEntityListener.class})
 public class OrderStatusHistory {
     @Id
     @GeneratedValue
@@ -35,6 +36,7 @@ public class OrderStatusHistory {
     private Order order;
     @Enumerated(EnumType.STRING)
     private Order.Status status;
+    // Ключ секционирования по месяцам, как и Order.createdAt
     @CreatedDate
     private ZonedDateTime createdAt;
 }
@@ -12,6 +12,7 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+import ru.denis5726.criteriaarticle.event.OrderDataEntityListener;
 
 import java.math.BigDecimal;
 import java.util.UUID;
@@ -22,7 +23,7 @@ import java.util.UUID;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, OrderDataEntityListener.class})
 public class Product {
     @Id
     @GeneratedValue
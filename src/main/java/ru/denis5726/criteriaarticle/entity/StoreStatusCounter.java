@@ -0,0 +1,44 @@
+package ru.denis5726.criteriaarticle.entity;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// Количество и суммарная стоимость заказов магазина с определённым статусом.
+// Таблица поддерживается триггерами БД (см. 00003__STORE_STATUS_COUNTER.xml), из приложения только читается
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Immutable
+@IdClass(StoreStatusCounter.Key.class)
+public class StoreStatusCounter {
+    @Id
+    private UUID storeId;
+    @Id
+    @Enumerated(EnumType.STRING)
+    private Order.Status status;
+    private Long orderCount;
+    private BigDecimal totalPrice;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private UUID storeId;
+        private Order.Status status;
+    }
+}
@@ -0,0 +1,7 @@
+package ru.denis5726.criteriaarticle.event;
+
+import java.util.UUID;
+
+// Категория создана, изменена или удалена
+public record CategoryChangedEvent(UUID categoryId) {
+}
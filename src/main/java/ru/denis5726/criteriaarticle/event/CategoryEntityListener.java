@@ -0,0 +1,22 @@
+package ru.denis5726.criteriaarticle.event;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import ru.denis5726.criteriaarticle.entity.Category;
+
+// JPA-слушатель создаётся Hibernate через контейнер бинов Spring, поэтому в него можно внедрять зависимости.
+// Сам он только публикует событие, а реагируют на него подписчики, чтобы сущность не зависела от них
+@RequiredArgsConstructor
+public class CategoryEntityListener {
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Category category) {
+        eventPublisher.publishEvent(new CategoryChangedEvent(category.getId()));
+    }
+}
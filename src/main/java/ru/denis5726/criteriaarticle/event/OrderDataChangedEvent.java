@@ -0,0 +1,12 @@
+package ru.denis5726.criteriaarticle.event;
+
+import java.util.UUID;
+
+// Изменились данные, от которых зависят результаты запросов по заказам.
+// orderId равен null, если изменение затрагивает не один заказ (например, цена товара).
+// productId - id изменённого товара, иначе null
+public record OrderDataChangedEvent(UUID orderId, UUID productId) {
+    public OrderDataChangedEvent(UUID orderId) {
+        this(orderId, null);
+    }
+}
@@ -0,0 +1,33 @@
+package ru.denis5726.criteriaarticle.event;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.entity.OrderItem;
+import ru.denis5726.criteriaarticle.entity.OrderStatusHistory;
+import ru.denis5726.criteriaarticle.entity.Product;
+
+// Общий JPA-слушатель сущностей, из которых строятся проекции заказов
+@RequiredArgsConstructor
+public class OrderDataEntityListener {
+    private final ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(Object entity) {
+        eventPublisher.publishEvent(new OrderDataChangedEvent(
+                switch (entity) {
+                    case Order order -> order.getId();
+                    case OrderItem orderItem -> orderItem.getOrder() == null ? null : orderItem.getOrder().getId();
+                    case OrderStatusHistory history -> history.getOrder() == null ? null : history.getOrder().getId();
+                    default -> null;
+                },
+                // По товару CategoryOrderIndex находит заказы, которые меняет перенос товара в другую категорию
+                entity instanceof Product product ? product.getId() : null
+        ));
+    }
+}
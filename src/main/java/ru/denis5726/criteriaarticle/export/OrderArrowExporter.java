@@ -0,0 +1,289 @@
+package ru.denis5726.criteriaarticle.export;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.FixedSizeBinaryVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMicroTZVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.denis5726.criteriaarticle.config.properties.OrderExportProperties;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.index.CategoryTreeIndex;
+import ru.denis5726.criteriaarticle.model.OrderExportProjection;
+import ru.denis5726.criteriaarticle.repository.OrderRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Выгрузка всех позиций заказов в формате Arrow IPC (stream). Строки пишутся пачками (record batch)
+// по batchRows строк, буферы вектора переиспользуются между пачками, поэтому память не зависит от объёма истории.
+// Повторяющиеся значения (магазин, товар, путь категории, статус) кодируются словарями: в столбце хранится
+// номер значения, а сами значения передаются словарём. Словари магазинов, товаров и категорий собираются
+// для каждой пачки заново, и ArrowStreamWriter отправляет словарь перед пачкой, только если он изменился.
+// UUID записываются как 16 байт (FixedSizeBinary(16), старшие байты первыми)
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderArrowExporter {
+    public static final String MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    private static final int UUID_BYTES = 16;
+    // Цена в БД - numeric без ограничения точности, в выгрузке - decimal(38, 4)
+    private static final int PRICE_PRECISION = 38;
+    private static final int PRICE_SCALE = 4;
+    private static final ArrowType.Int INDEX_TYPE = new ArrowType.Int(32, true);
+    private static final ArrowType.Int STATUS_INDEX_TYPE = new ArrowType.Int(8, true);
+    private static final DictionaryEncoding STORE_ENCODING = new DictionaryEncoding(1, false, INDEX_TYPE);
+    private static final DictionaryEncoding STATUS_ENCODING = new DictionaryEncoding(2, false, STATUS_INDEX_TYPE);
+    private static final DictionaryEncoding PRODUCT_ENCODING = new DictionaryEncoding(3, false, INDEX_TYPE);
+    private static final DictionaryEncoding CATEGORY_ENCODING = new DictionaryEncoding(4, false, INDEX_TYPE);
+    private static final ArrowType TIMESTAMP_TYPE = new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC");
+    private static final ArrowType UUID_TYPE = new ArrowType.FixedSizeBinary(UUID_BYTES);
+    private static final Schema SCHEMA = new Schema(List.of(
+            new Field("order_id", FieldType.notNullable(UUID_TYPE), null),
+            new Field("store_id", new FieldType(false, INDEX_TYPE, STORE_ENCODING), null),
+            new Field("customer_id", FieldType.notNullable(UUID_TYPE), null),
+            new Field("status", new FieldType(false, STATUS_INDEX_TYPE, STATUS_ENCODING), null),
+            new Field("created_at", FieldType.notNullable(TIMESTAMP_TYPE), null),
+            new Field("finished_at", FieldType.nullable(TIMESTAMP_TYPE), null),
+            new Field("product_id", new FieldType(false, INDEX_TYPE, PRODUCT_ENCODING), null),
+            new Field("category_path", new FieldType(true, INDEX_TYPE, CATEGORY_ENCODING), null),
+            new Field("quantity", FieldType.notNullable(new ArrowType.Int(64, true)), null),
+            new Field("price", FieldType.notNullable(new ArrowType.Decimal(PRICE_PRECISION, PRICE_SCALE, 128)), null)
+    ));
+
+    private final OrderRepository repository;
+    private final CategoryTreeIndex categoryTreeIndex;
+    private final PlatformTransactionManager transactionManager;
+    private final OrderExportProperties properties;
+
+    // Возвращает количество выгруженных строк
+    public long export(WritableByteChannel channel) {
+        final var transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        // Вся выгрузка читается из одного снимка БД, даже если заказы меняются во время выгрузки
+        transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        final var startedAt = System.nanoTime();
+        // Аллокатор на каждую выгрузку: при ошибке все её буферы освобождаются при закрытии
+        try (var allocator = new RootAllocator(properties.getMaxAllocation().toBytes());
+             var batch = new Batch(allocator, categoryTreeIndex.findPaths());
+             var writer = new ArrowStreamWriter(batch.root, batch.dictionaries, channel)) {
+            writer.start();
+            final var rows = transactionTemplate.execute(status -> {
+                var written = 0L;
+                try (var exportRows = repository.streamOrderExportRows(properties.getFetchSize())) {
+                    for (final var iterator = exportRows.iterator(); iterator.hasNext(); ) {
+                        batch.add(iterator.next());
+                        written++;
+                        if (batch.size == properties.getBatchRows()) {
+                            batch.write(writer);
+                        }
+                    }
+                    if (batch.size > 0) {
+                        batch.write(writer);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return written;
+            });
+            writer.end();
+            log.info("Exported {} order rows, {} bytes in {} ms",
+                    rows, writer.bytesWritten(), (System.nanoTime() - startedAt) / 1_000_000);
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Векторы одной пачки строк вместе со словарями
+    private static final class Batch implements AutoCloseable {
+        private final VectorSchemaRoot root;
+        private final DictionaryProvider.MapDictionaryProvider dictionaries;
+        private final Map<UUID, String> categoryPaths;
+        private final FixedSizeBinaryVector orderIds;
+        private final IntVector storeIndices;
+        private final FixedSizeBinaryVector customerIds;
+        private final TinyIntVector statusIndices;
+        private final TimeStampMicroTZVector createdAt;
+        private final TimeStampMicroTZVector finishedAt;
+        private final IntVector productIndices;
+        private final IntVector categoryIndices;
+        private final BigIntVector quantities;
+        private final DecimalVector prices;
+        private final DictionaryBuilder<UUID> stores;
+        private final DictionaryBuilder<UUID> products;
+        private final DictionaryBuilder<String> categories;
+        private final VarCharVector statuses;
+        private final byte[] uuidBytes = new byte[UUID_BYTES];
+        private int size;
+
+        Batch(BufferAllocator allocator, Map<UUID, String> categoryPaths) {
+            this.categoryPaths = categoryPaths;
+            root = VectorSchemaRoot.create(SCHEMA, allocator);
+            orderIds = (FixedSizeBinaryVector) root.getVector("order_id");
+            storeIndices = (IntVector) root.getVector("store_id");
+            customerIds = (FixedSizeBinaryVector) root.getVector("customer_id");
+            statusIndices = (TinyIntVector) root.getVector("status");
+            createdAt = (TimeStampMicroTZVector) root.getVector("created_at");
+            finishedAt = (TimeStampMicroTZVector) root.getVector("finished_at");
+            productIndices = (IntVector) root.getVector("product_id");
+            categoryIndices = (IntVector) root.getVector("category_path");
+            quantities = (BigIntVector) root.getVector("quantity");
+            prices = (DecimalVector) root.getVector("price");
+
+            stores = new DictionaryBuilder<>(
+                    new FixedSizeBinaryVector("store_id_dictionary", allocator, UUID_BYTES),
+                    STORE_ENCODING,
+                    (vector, index, storeId) -> ((FixedSizeBinaryVector) vector).setSafe(index, toBytes(storeId))
+            );
+            products = new DictionaryBuilder<>(
+                    new FixedSizeBinaryVector("product_id_dictionary", allocator, UUID_BYTES),
+                    PRODUCT_ENCODING,
+                    (vector, index, productId) -> ((FixedSizeBinaryVector) vector).setSafe(index, toBytes(productId))
+            );
+            categories = new DictionaryBuilder<>(
+                    new VarCharVector("category_path_dictionary", allocator),
+                    CATEGORY_ENCODING,
+                    (vector, index, path) -> ((VarCharVector) vector)
+                            .setSafe(index, path.getBytes(StandardCharsets.UTF_8))
+            );
+            // Статусов немного и они не меняются, номер значения в словаре - порядковый номер статуса
+            statuses = new VarCharVector("status_dictionary", allocator);
+            for (final var status : Order.Status.values()) {
+                statuses.setSafe(status.ordinal(), status.name().getBytes(StandardCharsets.UTF_8));
+            }
+            statuses.setValueCount(Order.Status.values().length);
+
+            dictionaries = new DictionaryProvider.MapDictionaryProvider();
+            dictionaries.put(stores.dictionary);
+            dictionaries.put(new Dictionary(statuses, STATUS_ENCODING));
+            dictionaries.put(products.dictionary);
+            dictionaries.put(categories.dictionary);
+        }
+
+        void add(OrderExportProjection row) {
+            orderIds.setSafe(size, toBytes(row.getOrderId()));
+            storeIndices.setSafe(size, stores.indexOf(row.getStoreId()));
+            customerIds.setSafe(size, toBytes(row.getCustomerId()));
+            statusIndices.setSafe(size, row.getStatus().ordinal());
+            createdAt.setSafe(size, toMicros(row.getCreatedAt()));
+            if (row.getFinishedAt() == null) {
+                finishedAt.setNull(size);
+            } else {
+                finishedAt.setSafe(size, toMicros(row.getFinishedAt()));
+            }
+            productIndices.setSafe(size, products.indexOf(row.getProductId()));
+            // Категория могла появиться после загрузки дерева категорий, тогда путь неизвестен
+            final var categoryPath = categoryPaths.get(row.getCategoryId());
+            if (categoryPath == null) {
+                categoryIndices.setNull(size);
+            } else {
+                categoryIndices.setSafe(size, categories.indexOf(categoryPath));
+            }
+            quantities.setSafe(size, row.getQuantity());
+            prices.setSafe(size, row.getPrice().setScale(PRICE_SCALE, RoundingMode.HALF_UP));
+            size++;
+        }
+
+        void write(ArrowStreamWriter writer) throws IOException {
+            stores.finish();
+            products.finish();
+            categories.finish();
+            root.setRowCount(size);
+            writer.writeBatch();
+
+            // reset обнуляет значения, но оставляет выделенные буферы для следующей пачки
+            root.getFieldVectors().forEach(ValueVector::reset);
+            stores.reset();
+            products.reset();
+            categories.reset();
+            size = 0;
+        }
+
+        private byte[] toBytes(UUID uuid) {
+            ByteBuffer.wrap(uuidBytes)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits());
+            return uuidBytes;
+        }
+
+        private static long toMicros(ZonedDateTime dateTime) {
+            final var instant = dateTime.toInstant();
+            return instant.getEpochSecond() * 1_000_000 + instant.getNano() / 1_000;
+        }
+
+        @Override
+        public void close() {
+            root.close();
+            stores.dictionary.getVector().close();
+            products.dictionary.getVector().close();
+            categories.dictionary.getVector().close();
+            statuses.close();
+        }
+    }
+
+    // Словарь значений одной пачки: значение получает номер при первом появлении
+    private static final class DictionaryBuilder<T> {
+        private final Dictionary dictionary;
+        private final ValueSetter<T> setter;
+        private final Map<T, Integer> indices = new HashMap<>();
+
+        DictionaryBuilder(FieldVector vector, DictionaryEncoding encoding, ValueSetter<T> setter) {
+            this.dictionary = new Dictionary(vector, encoding);
+            this.setter = setter;
+        }
+
+        int indexOf(T value) {
+            return indices.computeIfAbsent(value, key -> {
+                final var index = indices.size();
+                setter.set(dictionary.getVector(), index, key);
+                return index;
+            });
+        }
+
+        void finish() {
+            dictionary.getVector().setValueCount(indices.size());
+        }
+
+        void reset() {
+            dictionary.getVector().reset();
+            indices.clear();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ValueSetter<T> {
+        void set(FieldVector vector, int index, T value);
+    }
+}
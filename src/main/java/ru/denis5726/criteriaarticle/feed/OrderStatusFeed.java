@@ -0,0 +1,379 @@
+package ru.denis5726.criteriaarticle.feed;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.denis5726.criteriaarticle.config.properties.OrderStatusFeedProperties;
+import ru.denis5726.criteriaarticle.datasource.UsePrimary;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.entity.StoreStatusCounter;
+import ru.denis5726.criteriaarticle.entity.StoreStatusCounter_;
+import ru.denis5726.criteriaarticle.feed.OrderStatusNotification.CounterDelta;
+import ru.denis5726.criteriaarticle.feed.OrderStatusNotification.SentToStoreChange;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Лента изменений по заказам магазинов для дашбордов (SSE, GET /orderStatusFeed). Подписчик получает снимок
+// счётчиков магазина (или всех магазинов) из store_status_counter, а дальше только изменения: приращения
+// счётчиков и переходы заказов в статус SENT_TO_STORE и из него. Изменения приходят из БД через LISTEN/NOTIFY
+// (OrderStatusNotificationListener) и раздаются подписчикам в памяти, запросов к БД на каждое изменение нет.
+// Изменения копятся в буфере подписчика и отправляются раз в flush-interval: приращения одного счётчика
+// складываются, из нескольких изменений одного заказа остаётся последнее. Пока клиент не принял предыдущую
+// отправку, следующая не начинается, поэтому медленный клиент не задерживает остальных, а его буфер ограничен
+// числом счётчиков и max-pending-changes заказов. При переполнении буфера, переподключении слушателя
+// или исправлении счётчиков сверкой клиенту отправляется reset и подписка закрывается:
+// клиент подписывается заново и получает новый снимок.
+// События SSE: snapshot, counters, sentToStore, reset.
+// Метрики: order.status.feed.subscribers, order.status.feed.notifications, order.status.feed.resets
+@Slf4j
+@Component
+public class OrderStatusFeed {
+    static final String SNAPSHOT = "snapshot";
+    static final String COUNTERS = "counters";
+    static final String SENT_TO_STORE = "sentToStore";
+    static final String RESET = "reset";
+
+    private final EntityManager entityManager;
+    private final OrderStatusFeedProperties properties;
+    // Снимок счётчиков и номер снимка БД читаются в одной транзакции repeatable read
+    private final TransactionTemplate snapshotTransactionTemplate;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Подписчики на один магазин по id магазина, чтобы изменение магазина не проверялось всеми подписчиками
+    private final Map<UUID, Set<Subscriber>> subscribersByStoreId = new ConcurrentHashMap<>();
+    private final Set<Subscriber> allStoresSubscribers = ConcurrentHashMap.newKeySet();
+    // Отправка ждёт, пока клиент примет данные. Виртуальный поток при этом не занимает поток ОС
+    private final ExecutorService sendExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("order-status-feed-flush").daemon().factory()
+    );
+    private final Counter notifications;
+    private final Counter resets;
+
+    public OrderStatusFeed(
+            EntityManager entityManager,
+            PlatformTransactionManager transactionManager,
+            OrderStatusFeedProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.entityManager = entityManager;
+        this.properties = properties;
+        this.snapshotTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.snapshotTransactionTemplate.setReadOnly(true);
+        this.snapshotTransactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        Gauge.builder("order.status.feed.subscribers", subscribers, Set::size)
+                .description("Subscribers of the order status feed")
+                .register(meterRegistry);
+        this.notifications = Counter.builder("order.status.feed.notifications")
+                .description("Notifications received from the database")
+                .register(meterRegistry);
+        this.resets = Counter.builder("order.status.feed.resets")
+                .description("Subscriptions closed with a reset event")
+                .register(meterRegistry);
+
+        final var flushInterval = properties.getFlushInterval().toNanos();
+        flushScheduler.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.NANOSECONDS);
+    }
+
+    // Подписчик регистрируется до чтения снимка, поэтому изменения, зафиксированные после снимка,
+    // до него точно дойдут. Изменения, уже учтённые в снимке, отбрасываются по номеру транзакции.
+    // Снимок читается из основной БД: номера транзакций реплики могут отставать от уведомлений
+    @UsePrimary
+    public SseEmitter subscribe(UUID storeId) {
+        if (!properties.isEnabled()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Order status feed is disabled");
+        }
+        if (subscribers.size() >= properties.getMaxSubscribers()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many order status feed subscribers");
+        }
+        final var emitter = new SseEmitter(properties.getSubscriptionTimeout().toMillis());
+        final var subscriber = new Subscriber(storeId, emitter);
+        emitter.onCompletion(() -> unregister(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> unregister(subscriber));
+        register(subscriber);
+        try {
+            subscriber.start(readSnapshot(storeId));
+        } catch (RuntimeException e) {
+            unregister(subscriber);
+            throw e;
+        }
+        return emitter;
+    }
+
+    public void publish(OrderStatusNotification notification) {
+        notifications.increment();
+        final var storeSubscribers = subscribersByStoreId.get(notification.storeId());
+        if (storeSubscribers != null) {
+            storeSubscribers.forEach(subscriber -> subscriber.offer(notification));
+        }
+        allStoresSubscribers.forEach(subscriber -> subscriber.offer(notification));
+    }
+
+    // Подписчики могли пропустить изменения, поэтому их представление нужно построить заново
+    public void resetAll(String reason) {
+        subscribers.forEach(subscriber -> subscriber.reset(reason));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushScheduler.shutdownNow();
+        sendExecutor.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+    }
+
+    private Snapshot readSnapshot(UUID storeId) {
+        return snapshotTransactionTemplate.execute(status -> {
+            // Снимок транзакции repeatable read фиксируется первым запросом, счётчики читаются в том же снимке
+            final var transactionSnapshot = TransactionSnapshot.parse((String) entityManager
+                    .createNativeQuery("select pg_current_snapshot()::text")
+                    .getSingleResult());
+
+            final var cb = entityManager.getCriteriaBuilder();
+            final var query = cb.createQuery(StoreStatusCounter.class);
+            final var counter = query.from(StoreStatusCounter.class);
+            if (storeId != null) {
+                query.where(cb.equal(counter.get(StoreStatusCounter_.STORE_ID), storeId));
+            }
+            final var counters = entityManager.createQuery(query).getResultStream()
+                    // Обнулённый счётчик эквивалентен отсутствующему
+                    .filter(value -> value.getOrderCount() != 0 || value.getTotalPrice().signum() != 0)
+                    .map(value -> new CounterDelta(
+                            0,
+                            value.getStoreId(),
+                            value.getStatus(),
+                            value.getOrderCount(),
+                            value.getTotalPrice()
+                    ))
+                    .toList();
+            return new Snapshot(transactionSnapshot, counters);
+        });
+    }
+
+    private void register(Subscriber subscriber) {
+        subscribers.add(subscriber);
+        if (subscriber.storeId == null) {
+            allStoresSubscribers.add(subscriber);
+        } else {
+            subscribersByStoreId.computeIfAbsent(subscriber.storeId, key -> ConcurrentHashMap.newKeySet())
+                    .add(subscriber);
+        }
+    }
+
+    private void unregister(Subscriber subscriber) {
+        subscriber.close();
+        subscribers.remove(subscriber);
+        if (subscriber.storeId == null) {
+            allStoresSubscribers.remove(subscriber);
+        } else {
+            subscribersByStoreId.computeIfPresent(subscriber.storeId, (key, storeSubscribers) -> {
+                storeSubscribers.remove(subscriber);
+                return storeSubscribers.isEmpty() ? null : storeSubscribers;
+            });
+        }
+    }
+
+    private void flush() {
+        final var now = System.nanoTime();
+        for (final var subscriber : subscribers) {
+            if (subscriber.needsFlush(now)) {
+                sendExecutor.execute(() -> subscriber.flush(now));
+            }
+        }
+    }
+
+    // Снимок БД в формате pg_current_snapshot(): xmin:xmax:xip_list. Транзакция видна в снимке,
+    // если она зафиксирована до его создания, то есть меньше xmin или меньше xmax и не в списке активных
+    record TransactionSnapshot(long xmin, long xmax, long[] activeXids) {
+
+        static TransactionSnapshot parse(String snapshot) {
+            final var parts = snapshot.split(":", -1);
+            final var activeXids = parts[2].isEmpty()
+                    ? new long[0]
+                    : Arrays.stream(parts[2].split(",")).mapToLong(Long::parseLong).sorted().toArray();
+            return new TransactionSnapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), activeXids);
+        }
+
+        boolean isVisible(long xid) {
+            return xid < xmin || xid < xmax && Arrays.binarySearch(activeXids, xid) < 0;
+        }
+    }
+
+    private record Snapshot(TransactionSnapshot transactionSnapshot, List<CounterDelta> counters) {
+    }
+
+    private record CounterKey(UUID storeId, Order.Status status) {
+    }
+
+    private final class Subscriber {
+        private final UUID storeId;
+        private final SseEmitter emitter;
+        // Пока снимок не прочитан, изменения копятся как есть: по ним ещё нельзя сказать, учтены ли они в снимке
+        private final List<OrderStatusNotification> beforeSnapshot = new ArrayList<>();
+        private final Map<CounterKey, CounterDelta> counters = new LinkedHashMap<>();
+        private final Map<UUID, SentToStoreChange> changes = new LinkedHashMap<>();
+        private TransactionSnapshot snapshot;
+        private String resetReason;
+        private boolean sending;
+        private boolean closed;
+        private long lastSentAt = System.nanoTime();
+
+        Subscriber(UUID storeId, SseEmitter emitter) {
+            this.storeId = storeId;
+            this.emitter = emitter;
+        }
+
+        synchronized void start(Snapshot loaded) {
+            // Подписка уже сброшена, клиент подпишется заново
+            if (closed || resetReason != null) {
+                return;
+            }
+            try {
+                // До возврата SseEmitter из контроллера событие только запоминается и уходит первым
+                emitter.send(SseEmitter.event()
+                        .name(SNAPSHOT)
+                        .data(Map.of("counters", loaded.counters()), MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to send order status feed snapshot", e);
+            }
+            snapshot = loaded.transactionSnapshot();
+            beforeSnapshot.forEach(this::merge);
+            beforeSnapshot.clear();
+        }
+
+        synchronized void offer(OrderStatusNotification notification) {
+            if (closed || resetReason != null) {
+                return;
+            }
+            if (snapshot == null) {
+                beforeSnapshot.add(notification);
+                if (beforeSnapshot.size() > properties.getMaxPendingChanges()) {
+                    reset("Too many pending changes");
+                }
+                return;
+            }
+            merge(notification);
+        }
+
+        synchronized void reset(String reason) {
+            if (closed || resetReason != null) {
+                return;
+            }
+            resetReason = reason;
+            beforeSnapshot.clear();
+            counters.clear();
+            changes.clear();
+        }
+
+        synchronized boolean needsFlush(long now) {
+            if (closed || sending) {
+                return false;
+            }
+            return resetReason != null
+                    || snapshot != null && (!counters.isEmpty() || !changes.isEmpty()
+                    || now - lastSentAt >= properties.getHeartbeatInterval().toNanos());
+        }
+
+        void flush(long now) {
+            final String reset;
+            final List<CounterDelta> counterBatch;
+            final List<SentToStoreChange> changeBatch;
+            synchronized (this) {
+                if (closed || sending) {
+                    return;
+                }
+                sending = true;
+                lastSentAt = now;
+                reset = resetReason;
+                counterBatch = List.copyOf(counters.values());
+                changeBatch = List.copyOf(changes.values());
+                counters.clear();
+                changes.clear();
+            }
+            try {
+                if (reset != null) {
+                    resets.increment();
+                    emitter.send(SseEmitter.event()
+                            .name(RESET)
+                            .data(Map.of("reason", reset), MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                    return;
+                }
+                if (!counterBatch.isEmpty()) {
+                    emitter.send(SseEmitter.event().name(COUNTERS).data(counterBatch, MediaType.APPLICATION_JSON));
+                }
+                if (!changeBatch.isEmpty()) {
+                    emitter.send(SseEmitter.event().name(SENT_TO_STORE).data(changeBatch, MediaType.APPLICATION_JSON));
+                }
+                if (counterBatch.isEmpty() && changeBatch.isEmpty()) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Клиент отключился или подписка уже завершена
+                log.debug("Order status feed subscriber disconnected: {}", e.toString());
+                unregister(this);
+            } finally {
+                synchronized (this) {
+                    sending = false;
+                }
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+
+        private void merge(OrderStatusNotification notification) {
+            // Изменение уже учтено в снимке, который получил клиент
+            if (snapshot.isVisible(notification.xid())) {
+                return;
+            }
+            switch (notification) {
+                case CounterDelta delta -> counters.merge(
+                        new CounterKey(delta.storeId(), delta.status()),
+                        delta,
+                        OrderStatusFeed::sum
+                );
+                case SentToStoreChange change -> {
+                    changes.put(change.orderId(), change);
+                    if (changes.size() > properties.getMaxPendingChanges()) {
+                        reset("Too many pending changes");
+                    }
+                }
+            }
+        }
+    }
+
+    // null, если приращения взаимно уничтожились: такой счётчик клиенту отправлять не нужно
+    private static CounterDelta sum(CounterDelta first, CounterDelta second) {
+        final var orderCount = first.orderCount() + second.orderCount();
+        final var totalPrice = first.totalPrice().add(second.totalPrice());
+        if (orderCount == 0 && totalPrice.signum() == 0) {
+            return null;
+        }
+        return new CounterDelta(0, first.storeId(), first.status(), orderCount, totalPrice);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.denis5726.criteriaarticle.feed;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import ru.denis5726.criteriaarticle.entity.Order;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+// Уведомление из канала order_status_feed (00010__ORDER_STATUS_FEED.xml). В том же виде, но без xid,
+// изменения отправляются подписчикам ленты. Поле seq нужно только для того, чтобы postgres
+// не склеивал одинаковые уведомления одной транзакции
+@JsonIgnoreProperties("seq")
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = OrderStatusNotification.CounterDelta.class, name = "counter"),
+        @JsonSubTypes.Type(value = OrderStatusNotification.SentToStoreChange.class, name = "sentToStore")
+})
+public sealed interface OrderStatusNotification {
+
+    // Номер транзакции, в которой произошло изменение
+    long xid();
+
+    UUID storeId();
+
+    // Приращение счётчика заказов магазина со статусом status (как в store_status_counter)
+    record CounterDelta(
+            @JsonProperty(access = JsonProperty.Access.WRITE_ONLY) long xid,
+            UUID storeId,
+            Order.Status status,
+            long orderCount,
+            BigDecimal totalPrice
+    ) implements OrderStatusNotification {
+    }
+
+    // Заказ перешёл в статус SENT_TO_STORE (entered = true) или вышел из него
+    record SentToStoreChange(
+            @JsonProperty(access = JsonProperty.Access.WRITE_ONLY) long xid,
+            UUID storeId,
+            UUID orderId,
+            boolean entered
+    ) implements OrderStatusNotification {
+    }
+}
@@ -0,0 +1,118 @@
+package ru.denis5726.criteriaarticle.feed;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.denis5726.criteriaarticle.config.properties.OrderStatusFeedProperties;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Properties;
+
+// Получает уведомления канала order_status_feed и передаёт их в OrderStatusFeed.
+// LISTEN действует, пока открыто соединение, поэтому у слушателя своё соединение с основной БД
+// вне пула: соединение пула было бы занято всё время работы приложения
+@Slf4j
+@Component
+public class OrderStatusNotificationListener {
+    static final String CHANNEL = "order_status_feed";
+    // Как долго ждать уведомлений за один вызов. Определяет только задержку остановки слушателя
+    private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+
+    private final DataSourceProperties dataSourceProperties;
+    private final OrderStatusFeed feed;
+    private final ObjectMapper objectMapper;
+    private final OrderStatusFeedProperties properties;
+    private final String applicationName;
+    private volatile Thread thread;
+
+    public OrderStatusNotificationListener(
+            DataSourceProperties dataSourceProperties,
+            OrderStatusFeed feed,
+            ObjectMapper objectMapper,
+            OrderStatusFeedProperties properties,
+            @Value("${spring.application.name}") String applicationName
+    ) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.feed = feed;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.applicationName = applicationName;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (properties.isEnabled()) {
+            thread = Thread.ofPlatform().name("order-status-feed-listener").daemon().start(this::listen);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        final var listener = thread;
+        thread = null;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+
+    private void listen() {
+        while (thread == Thread.currentThread()) {
+            try (var connection = connect()) {
+                // Уведомления, отправленные до LISTEN, потеряны: подписчикам, которые могли их пропустить
+                // (до первого подключения или после обрыва соединения), нужен новый снимок
+                feed.resetAll("Order status feed listener reconnected");
+                log.info("Listening to {} notifications", CHANNEL);
+                final var pgConnection = connection.unwrap(PGConnection.class);
+                while (thread == Thread.currentThread()) {
+                    for (final var notification : pgConnection.getNotifications((int) POLL_TIMEOUT.toMillis())) {
+                        publish(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                log.warn("Order status feed listener failed, reconnecting in {}", properties.getReconnectDelay(), e);
+                try {
+                    Thread.sleep(properties.getReconnectDelay());
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        final var info = new Properties();
+        info.setProperty("user", dataSourceProperties.determineUsername());
+        if (dataSourceProperties.determinePassword() != null) {
+            info.setProperty("password", dataSourceProperties.determinePassword());
+        }
+        info.setProperty("ApplicationName", applicationName + "/" + CHANNEL);
+        // Без keepalive обрыв сети на простаивающем соединении не обнаружится
+        info.setProperty("tcpKeepAlive", "true");
+        final var connection = DriverManager.getConnection(dataSourceProperties.determineUrl(), info);
+        try (var statement = connection.createStatement()) {
+            statement.execute("listen " + CHANNEL);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    private void publish(String payload) {
+        try {
+            feed.publish(objectMapper.readValue(payload, OrderStatusNotification.class));
+        } catch (JsonProcessingException e) {
+            log.warn("Skipping malformed {} notification: {}", CHANNEL, payload, e);
+        }
+    }
+}
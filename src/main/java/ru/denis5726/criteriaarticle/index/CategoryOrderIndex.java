@@ -0,0 +1,461 @@
+package ru.denis5726.criteriaarticle.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.criteria.JoinType;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaCriteriaQuery;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.denis5726.criteriaarticle.config.CacheConfig;
+import ru.denis5726.criteriaarticle.config.JpaConfig;
+import ru.denis5726.criteriaarticle.config.properties.CategoryOrderIndexProperties;
+import ru.denis5726.criteriaarticle.datasource.UsePrimary;
+import ru.denis5726.criteriaarticle.entity.Category_;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.entity.OrderItem;
+import ru.denis5726.criteriaarticle.entity.OrderItem_;
+import ru.denis5726.criteriaarticle.entity.Order_;
+import ru.denis5726.criteriaarticle.entity.Product_;
+import ru.denis5726.criteriaarticle.event.OrderDataChangedEvent;
+import ru.denis5726.criteriaarticle.metrics.QueryMetrics;
+import ru.denis5726.criteriaarticle.repository.query.PreparedCriteriaQuery;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+
+// Инвертированный индекс категория -> заказы: для каждой категории битовая карта (RoaringBitmap)
+// порядковых номеров заказов (order.ordinal), в которых есть товар этой категории.
+// Заказы, все товары которых из заданных категорий, находятся операциями над картами,
+// без JOIN позиций с товарами и группировки в БД.
+// Индекс целиком строится при старте (в фоне) и раз в rebuild-interval, а между перестроениями
+// раз в refresh-interval дочитывает новые заказы и пересчитывает заказы, изменённые через приложение,
+// в том числе заказы с товарами, перенесёнными в другую категорию. Изменения в обход приложения
+// (кроме новых заказов, их находит ordinal) попадают в индекс только при перестроении. Номера удалённых
+// заказов остаются в картах до перестроения, но в результат не попадают: строки заказов по номерам читаются из БД.
+// Метрики: category.order.index.size (байт), category.order.index.entries (пар заказ-категория)
+@Slf4j
+@Component
+// Индекс должен видеть только что зафиксированные изменения, реплика может отставать
+@UsePrimary
+public class CategoryOrderIndex {
+    private static final String WATERMARK = "watermark";
+    private static final String RECENT_SINCE = "recentSince";
+    private static final String ORDER_IDS = "orderIds";
+    private static final String PRODUCT_IDS = "productIds";
+
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final QueryMetrics queryMetrics;
+    private final CacheManager cacheManager;
+    private final CategoryOrderIndexProperties properties;
+    // Строки [ordinal, id категории] по всем позициям
+    private final PreparedCriteriaQuery<Object[]> allEntries;
+    // То же для заказов с номером больше прочитанного или созданных недавно
+    private final PreparedCriteriaQuery<Object[]> newEntries;
+    // То же для заказов по id. Заказ без позиций даёт строку с null вместо категории
+    private final PreparedCriteriaQuery<Object[]> orderEntries;
+    // id заказов, в которых есть товары с заданными id
+    private final PreparedCriteriaQuery<UUID> productOrderIds;
+    // Заказы и товары, изменённые в зафиксированных транзакциях, пересчитываются при следующем обновлении
+    private final Changes changes = new Changes(ConcurrentHashMap.newKeySet(), ConcurrentHashMap.newKeySet());
+    // Карты читаются под read lock, изменяются под write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // null, пока индекс не построен, а также если он выключен или превысил max-size
+    private volatile State state;
+
+    public CategoryOrderIndex(
+            EntityManager entityManager,
+            EntityManagerFactory entityManagerFactory,
+            TransactionTemplate readOnlyTransactionTemplate,
+            QueryMetrics queryMetrics,
+            CacheManager cacheManager,
+            CategoryOrderIndexProperties properties,
+            MeterRegistry meterRegistry
+    ) {
+        this.entityManager = entityManager;
+        this.readOnlyTransactionTemplate = readOnlyTransactionTemplate;
+        this.queryMetrics = queryMetrics;
+        this.cacheManager = cacheManager;
+        this.properties = properties;
+
+        final var cb = entityManagerFactory.unwrap(SessionFactory.class).getCriteriaBuilder();
+        allEntries = new PreparedCriteriaQuery<>(createAllEntriesQuery(cb));
+        newEntries = new PreparedCriteriaQuery<>(createNewEntriesQuery(cb));
+        orderEntries = new PreparedCriteriaQuery<>(createOrderEntriesQuery(cb));
+        productOrderIds = new PreparedCriteriaQuery<>(createProductOrderIdsQuery(cb));
+
+        Gauge.builder("category.order.index.size", this, index -> index.stateValue(State::getSizeInBytes))
+                .baseUnit("bytes")
+                .description("Memory used by category order bitmaps")
+                .register(meterRegistry);
+        Gauge.builder("category.order.index.entries", this, index -> index.stateValue(State::getEntries))
+                .description("Order-category pairs in category order bitmaps")
+                .register(meterRegistry);
+    }
+
+    // Номера заказов, в которых есть товар из категорий categoryIds и нет товаров из других категорий.
+    // null, если индекс не готов и запрос нужно выполнить в БД
+    public int[] findOrdinalsWithAllItemsIn(Collection<UUID> categoryIds) {
+        final var current = state;
+        if (current == null) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            final var included = new ArrayList<RoaringBitmap>();
+            categoryIds.forEach(categoryId ->
+                    Optional.ofNullable(current.ordinalsByCategoryId.get(categoryId)).ifPresent(included::add));
+            if (included.isEmpty()) {
+                return new int[0];
+            }
+            // Заказы с товаром из заданных категорий минус заказы с товаром из любой другой. Объединение карт
+            // всех остальных категорий почти не зависит от запроса и дорого, поэтому вычитаются по одной
+            // только карты, пересекающиеся с результатом
+            final var result = FastAggregation.or(included.iterator());
+            for (final var entry : current.ordinalsByCategoryId.entrySet()) {
+                if (result.isEmpty()) {
+                    break;
+                }
+                if (!categoryIds.contains(entry.getKey()) && RoaringBitmap.intersects(result, entry.getValue())) {
+                    result.andNot(entry.getValue());
+                }
+            }
+            return result.toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // События приходят на каждую записанную сущность, поэтому id собираются в множества транзакции
+    // и передаются индексу одной синхронизацией после фиксации, как в OrderCacheInvalidator.
+    // Событие без id заказа и товара (COPY-загрузка) видно по ordinal. По событию товара пересчитываются
+    // все заказы с ним: изменилась ли категория или только цена, из события не видно
+    @EventListener
+    public void onOrderDataChanged(OrderDataChangedEvent event) {
+        if (event.orderId() == null && event.productId() == null || !properties.isEnabled()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            changes.add(event);
+            return;
+        }
+        var transactionChanges = (Changes) TransactionSynchronizationManager.getResource(this);
+        if (transactionChanges == null) {
+            final var newChanges = new Changes(new HashSet<>(), new HashSet<>());
+            TransactionSynchronizationManager.bindResource(this, newChanges);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(CategoryOrderIndex.this);
+                    if (status == STATUS_COMMITTED) {
+                        changes.orderIds().addAll(newChanges.orderIds());
+                        changes.productIds().addAll(newChanges.productIds());
+                    }
+                }
+            });
+            transactionChanges = newChanges;
+        }
+        transactionChanges.add(event);
+    }
+
+    // Построение читает все позиции, а пока индекса нет, запросы выполняются в БД,
+    // поэтому запуск приложения его не ждёт. Вызов через прокси (@Async), как и по расписанию,
+    // поэтому @UsePrimary действует и на первое построение
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void startRebuild() {
+        rebuild();
+    }
+
+    @Scheduled(
+            fixedDelayString = "${app.category-order-index.rebuild-interval}",
+            initialDelayString = "${app.category-order-index.rebuild-interval}"
+    )
+    public synchronized void rebuild() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        final var startedAt = System.nanoTime();
+        final var maxSize = properties.getMaxSize().toBytes();
+        final var built = new State();
+        final var completed = Boolean.TRUE.equals(readOnlyTransactionTemplate.execute(status -> {
+            try (var rows = queryMetrics.stream(
+                    "rebuildCategoryOrderIndex",
+                    allEntries.createQuery(entityManager)
+                            .setHint(HibernateHints.HINT_FETCH_SIZE, properties.getFetchSize())
+                            .setHint(HibernateHints.HINT_READ_ONLY, true)
+            )) {
+                var read = 0L;
+                for (final var iterator = rows.iterator(); iterator.hasNext(); ) {
+                    final var row = iterator.next();
+                    built.add((Integer) row[0], (UUID) row[1]);
+                    // Размер проверяется на ходу, чтобы не держать в памяти индекс, который всё равно не подойдёт
+                    if (++read % properties.getFetchSize() == 0 && built.computeSizeInBytes() > maxSize) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }));
+        if (completed) {
+            built.optimize();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (completed && built.sizeInBytes <= maxSize) {
+                state = built;
+            } else {
+                state = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        evictCachedResults();
+
+        if (state == null) {
+            log.warn("Category order index disabled: size exceeds {} bytes", maxSize);
+            return;
+        }
+        log.info("Category order index built in {} ms: {} categories, {} entries, {} bytes",
+                (System.nanoTime() - startedAt) / 1_000_000,
+                built.ordinalsByCategoryId.size(),
+                built.entries,
+                built.sizeInBytes);
+    }
+
+    @Scheduled(fixedDelayString = "${app.category-order-index.refresh-interval}")
+    public synchronized void refresh() {
+        final var current = state;
+        if (current == null) {
+            // Перестроение (synchronized) сейчас не идёт, а следующее читает основную БД (@UsePrimary)
+            // и увидит эти заказы, изменения уже зафиксированы
+            changes.orderIds().clear();
+            changes.productIds().clear();
+            return;
+        }
+        final var orderIds = List.copyOf(changes.orderIds());
+        changes.orderIds().removeAll(orderIds);
+        final var productIds = List.copyOf(changes.productIds());
+        changes.productIds().removeAll(productIds);
+
+        final var rows = readOnlyTransactionTemplate.execute(status -> {
+            // Заказы с изменёнными товарами пересчитываются так же, как изменённые заказы
+            final var changedOrderIds = new HashSet<>(orderIds);
+            if (!productIds.isEmpty()) {
+                changedOrderIds.addAll(queryMetrics.list(
+                        "findChangedProductOrdersInCategoryOrderIndex",
+                        productOrderIds.createQuery(entityManager)
+                                .setParameter(PRODUCT_IDS, productIds.toArray(UUID[]::new))
+                ));
+            }
+            return new Rows(
+                    queryMetrics.list(
+                            "refreshCategoryOrderIndex",
+                            newEntries.createQuery(entityManager)
+                                    .setParameter(WATERMARK, current.watermark)
+                                    .setParameter(RECENT_SINCE, ZonedDateTime.now().minus(properties.getRecentWindow()))
+                    ),
+                    changedOrderIds.isEmpty()
+                            ? List.of()
+                            : queryMetrics.list(
+                            "refreshChangedOrdersInCategoryOrderIndex",
+                            orderEntries.createQuery(entityManager)
+                                    .setParameter(ORDER_IDS, changedOrderIds.toArray(UUID[]::new))
+                    )
+            );
+        });
+
+        var changed = false;
+        lock.writeLock().lock();
+        try {
+            if (!rows.changedOrders().isEmpty()) {
+                // Позиции изменённых заказов могли быть удалены, поэтому их номера сначала убираются из всех карт
+                final var ordinals = new RoaringBitmap();
+                rows.changedOrders().forEach(row -> ordinals.add((Integer) row[0]));
+                current.ordinalsByCategoryId.values().forEach(categoryOrdinals -> categoryOrdinals.andNot(ordinals));
+                rows.changedOrders().forEach(row -> current.add((Integer) row[0], (UUID) row[1]));
+                changed = true;
+            }
+            // Недавние заказы перечитываются каждый раз, повторное добавление номера ничего не меняет
+            for (final var row : rows.newOrders()) {
+                changed |= current.add((Integer) row[0], (UUID) row[1]);
+            }
+            if (changed) {
+                current.computeSizeInBytes();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (!changed) {
+            return;
+        }
+        // Результат, закэшированный между фиксацией изменения и обновлением индекса, устарел
+        evictCachedResults();
+        if (current.sizeInBytes > properties.getMaxSize().toBytes()) {
+            log.warn("Category order index disabled until next rebuild: {} bytes exceeds {} bytes",
+                    current.sizeInBytes, properties.getMaxSize().toBytes());
+            state = null;
+        }
+    }
+
+    private double stateValue(ToLongFunction<State> value) {
+        final var current = state;
+        return current == null ? 0 : value.applyAsLong(current);
+    }
+
+    private void evictCachedResults() {
+        Optional.ofNullable(cacheManager.getCache(CacheConfig.ORDERS_WITH_PRODUCT_IN_CATEGORIES))
+                .ifPresent(cache -> cache.invalidate());
+    }
+
+    private static JpaCriteriaQuery<Object[]> createAllEntriesQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createQuery(Object[].class);
+        final var orderItem = query.from(OrderItem.class);
+        final var order = orderItem.join(OrderItem_.ORDER);
+        // id категории берётся из столбца product.category_id, без JOIN с category
+        final var categoryId = orderItem.join(OrderItem_.PRODUCT).get(Product_.CATEGORY).get(Category_.ID);
+        return query
+                .select(cb.array(order.get(Order_.ORDINAL), categoryId))
+                .where(cb.isNotNull(categoryId));
+    }
+
+    private static JpaCriteriaQuery<Object[]> createNewEntriesQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createQuery(Object[].class);
+        final var order = query.from(Order.class);
+        final var categoryId = order.join(Order_.ITEMS)
+                .join(OrderItem_.PRODUCT)
+                .get(Product_.CATEGORY)
+                .get(Category_.ID);
+        // Номер выдаётся при вставке, а виден после фиксации, поэтому заказ с меньшим номером может
+        // появиться позже прочитанных. Такие заказы находятся по времени создания (recent-window)
+        return query
+                .select(cb.array(order.get(Order_.ORDINAL), categoryId))
+                .where(
+                        cb.or(
+                                cb.greaterThan(order.get(Order_.ORDINAL), cb.parameter(Integer.class, WATERMARK)),
+                                cb.greaterThanOrEqualTo(
+                                        order.get(Order_.CREATED_AT),
+                                        cb.parameter(ZonedDateTime.class, RECENT_SINCE)
+                                )
+                        ),
+                        cb.isNotNull(categoryId)
+                );
+    }
+
+    private static JpaCriteriaQuery<Object[]> createOrderEntriesQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createQuery(Object[].class);
+        final var order = query.from(Order.class);
+        final var product = order.join(Order_.ITEMS, JoinType.LEFT).join(OrderItem_.PRODUCT, JoinType.LEFT);
+        return query
+                .select(cb.array(order.get(Order_.ORDINAL), product.get(Product_.CATEGORY).get(Category_.ID)))
+                // id = any(?), а не arrayContains: иначе не используется индекс по первичному ключу
+                .where(cb.isTrue(cb.function(
+                        JpaConfig.EQUALS_ANY,
+                        Boolean.class,
+                        order.get(Order_.ID),
+                        cb.parameter(UUID[].class, ORDER_IDS)
+                )));
+    }
+
+    private static JpaCriteriaQuery<UUID> createProductOrderIdsQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createQuery(UUID.class);
+        final var orderItem = query.from(OrderItem.class);
+        // order_item.order_id по индексу order_item(product_id), который включает order_id
+        return query
+                .select(orderItem.get(OrderItem_.ORDER).get(Order_.ID))
+                .distinct(true)
+                .where(cb.isTrue(cb.function(
+                        JpaConfig.EQUALS_ANY,
+                        Boolean.class,
+                        orderItem.get(OrderItem_.PRODUCT).get(Product_.ID),
+                        cb.parameter(UUID[].class, PRODUCT_IDS)
+                )));
+    }
+
+    private record Rows(List<Object[]> newOrders, List<Object[]> changedOrders) {
+    }
+
+    // id изменённых заказов и товаров
+    private record Changes(Set<UUID> orderIds, Set<UUID> productIds) {
+        void add(OrderDataChangedEvent event) {
+            if (event.orderId() != null) {
+                orderIds.add(event.orderId());
+            }
+            if (event.productId() != null) {
+                productIds.add(event.productId());
+            }
+        }
+    }
+
+    // Карты изменяются только под write lock индекса
+    private static final class State {
+        private final Map<UUID, RoaringBitmap> ordinalsByCategoryId = new HashMap<>();
+        // Наибольший прочитанный номер заказа
+        private int watermark;
+        private volatile long sizeInBytes;
+        private volatile long entries;
+
+        // true, если пары ещё не было в индексе
+        boolean add(int ordinal, UUID categoryId) {
+            watermark = Math.max(watermark, ordinal);
+            if (categoryId == null) {
+                return false;
+            }
+            return ordinalsByCategoryId.computeIfAbsent(categoryId, key -> new RoaringBitmap()).checkedAdd(ordinal);
+        }
+
+        void optimize() {
+            // Длинные серии подряд идущих номеров хранятся интервалами (run containers)
+            ordinalsByCategoryId.values().forEach(RoaringBitmap::runOptimize);
+            computeSizeInBytes();
+        }
+
+        long computeSizeInBytes() {
+            var size = 0L;
+            var count = 0L;
+            for (final var ordinals : ordinalsByCategoryId.values()) {
+                size += ordinals.getLongSizeInBytes();
+                count += ordinals.getLongCardinality();
+            }
+            sizeInBytes = size;
+            entries = count;
+            return size;
+        }
+
+        long getSizeInBytes() {
+            return sizeInBytes;
+        }
+
+        long getEntries() {
+            return entries;
+        }
+    }
+}
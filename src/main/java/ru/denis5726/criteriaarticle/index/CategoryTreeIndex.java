@@ -0,0 +1,231 @@
+package ru.denis5726.criteriaarticle.index;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.denis5726.criteriaarticle.entity.Category;
+import ru.denis5726.criteriaarticle.entity.Category_;
+import ru.denis5726.criteriaarticle.event.CategoryChangedEvent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Дерево категорий в памяти приложения. Категории пронумерованы в порядке обхода в глубину (preorder),
+// поэтому все потомки категории занимают непрерывный интервал номеров сразу после неё самой
+// и поиск потомков не требует рекурсивного запроса к БД
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CategoryTreeIndex {
+    private final EntityManager entityManager;
+    // Увеличивается при каждом изменении категорий, чтобы не опубликовать снимок, построенный до изменения
+    private final AtomicLong version = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    // id всех потомков (без самих категорий) категорий с именем categoryName
+    public List<UUID> findDescendantIds(String categoryName) {
+        return current().findIds(categoryName, false);
+    }
+
+    // id категорий с именем categoryName, без потомков
+    public List<UUID> findIds(String categoryName) {
+        return current().findIds(categoryName);
+    }
+
+    // id категорий с именем categoryName вместе со всеми их потомками
+    public List<UUID> findSubtreeIds(String categoryName) {
+        return current().findIds(categoryName, true);
+    }
+
+    // Путь от корня ("Продукты/Напитки/Соки") по id для всех категорий дерева
+    public Map<UUID, String> findPaths() {
+        return current().pathsById();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryChangedEvent event) {
+        invalidate();
+    }
+
+    public void invalidate() {
+        version.incrementAndGet();
+        snapshot = null;
+    }
+
+    // Категории могут меняться и в обход приложения, поэтому дерево ещё и периодически перечитывается
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(
+            fixedDelayString = "${app.category-tree.refresh-interval}",
+            initialDelayString = "${app.category-tree.refresh-interval}"
+    )
+    public void reload() {
+        final var loadedVersion = version.get();
+        final var loaded = load();
+        synchronized (this) {
+            if (version.get() == loadedVersion) {
+                snapshot = loaded;
+            }
+        }
+    }
+
+    private Snapshot current() {
+        var current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null) {
+                final var loadedVersion = version.get();
+                current = load();
+                // Если категории изменились во время загрузки, снимок используем только для текущего запроса
+                if (version.get() == loadedVersion) {
+                    snapshot = current;
+                }
+            }
+            return current;
+        }
+    }
+
+    private Snapshot load() {
+        final var cb = entityManager.getCriteriaBuilder();
+        final var query = cb.createTupleQuery();
+        final var category = query.from(Category.class);
+        query.multiselect(
+                category.get(Category_.ID),
+                // Обращение к id родителя не требует JOIN, берётся значение столбца parent_id
+                category.get(Category_.PARENT).get(Category_.ID),
+                category.get(Category_.NAME)
+        );
+        final var rows = entityManager.createQuery(query).getResultList();
+
+        final var childrenByParentId = new HashMap<UUID, List<Integer>>();
+        final var roots = new ArrayList<Integer>();
+        final var ids = new UUID[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            ids[i] = rows.get(i).get(0, UUID.class);
+        }
+        final var knownIds = new HashMap<UUID, Integer>();
+        for (int i = 0; i < ids.length; i++) {
+            knownIds.put(ids[i], i);
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            final var parentId = rows.get(i).get(1, UUID.class);
+            if (parentId == null || !knownIds.containsKey(parentId)) {
+                roots.add(i);
+            } else {
+                childrenByParentId.computeIfAbsent(parentId, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        // Итеративный обход в глубину: позиция категории - её номер в порядке обхода,
+        // subtreeEnd - позиция, следующая за последним потомком
+        final var positionIds = new UUID[ids.length];
+        final var subtreeEnd = new int[ids.length];
+        final var positionsByName = new HashMap<String, int[]>();
+        final var paths = new String[ids.length];
+        final var pathsById = new HashMap<UUID, String>();
+        final var visited = new boolean[ids.length];
+        final var stack = new ArrayDeque<int[]>();
+        var nextPosition = 0;
+        for (final var root : roots) {
+            paths[root] = rows.get(root).get(2, String.class);
+            stack.push(new int[]{root, -1});
+            while (!stack.isEmpty()) {
+                final var frame = stack.peek();
+                final var row = frame[0];
+                if (frame[1] == -1) {
+                    visited[row] = true;
+                    frame[1] = nextPosition++;
+                    positionIds[frame[1]] = ids[row];
+                    positionsByName.merge(
+                            rows.get(row).get(2, String.class),
+                            new int[]{frame[1]},
+                            CategoryTreeIndex::concat
+                    );
+                    pathsById.put(ids[row], paths[row]);
+                    for (final var child : childrenByParentId.getOrDefault(ids[row], List.of())) {
+                        // Защита от циклов в parent_id: каждая категория попадает в дерево один раз
+                        if (!visited[child]) {
+                            paths[child] = paths[row] + "/" + rows.get(child).get(2, String.class);
+                            stack.push(new int[]{child, -1});
+                        }
+                    }
+                } else {
+                    stack.pop();
+                    subtreeEnd[frame[1]] = nextPosition;
+                }
+            }
+        }
+        if (nextPosition < ids.length) {
+            log.warn("{} categories are not reachable from root categories", ids.length - nextPosition);
+        }
+        log.info("Category tree index loaded, {} categories", nextPosition);
+        return new Snapshot(positionIds, subtreeEnd, Map.copyOf(positionsByName), Map.copyOf(pathsById));
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        final var result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private record Snapshot(
+            UUID[] positionIds,
+            int[] subtreeEnd,
+            Map<String, int[]> positionsByName,
+            Map<UUID, String> pathsById
+    ) {
+
+        List<UUID> findIds(String categoryName) {
+            final var positions = positionsByName.get(categoryName);
+            if (positions == null) {
+                return List.of();
+            }
+            return Arrays.stream(positions).mapToObj(position -> positionIds[position]).toList();
+        }
+
+        List<UUID> findIds(String categoryName, boolean includeSelf) {
+            final var positions = positionsByName.get(categoryName);
+            if (positions == null) {
+                return List.of();
+            }
+            // Сама категория стоит в интервале первой, перед своими потомками
+            final var skip = includeSelf ? 0 : 1;
+            if (positions.length == 1) {
+                // Самый частый случай - один интервал, копирование не нужно. Представление массива снимка
+                // только для чтения: снимок общий для всех запросов
+                final var position = positions[0];
+                return Collections.unmodifiableList(
+                        Arrays.asList(positionIds).subList(position + skip, subtreeEnd[position])
+                );
+            }
+            // Одноимённых категорий несколько, их поддеревья могут быть вложены друг в друга
+            final var sorted = positions.clone();
+            Arrays.sort(sorted);
+            final var result = new ArrayList<UUID>();
+            var coveredUntil = 0;
+            for (final var position : sorted) {
+                final var from = Math.max(position + skip, coveredUntil);
+                final var to = subtreeEnd[position];
+                if (from < to) {
+                    result.addAll(Arrays.asList(positionIds).subList(from, to));
+                }
+                coveredUntil = Math.max(coveredUntil, to);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.denis5726.criteriaarticle.job;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// Периодическая сверка дневной выручки daily_order_revenue с исходными таблицами.
+// Сверяются только последние дни: в них попадает почти вся запись, а старые дни меняются редко
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DailyOrderRevenueReconcileJob {
+    private final EntityManager entityManager;
+    @Value("${app.daily-order-revenue.reconcile-days}")
+    private int reconcileDays;
+    // Дни daily_order_revenue - дни этой зоны, а не зоны JVM
+    @Value("${app.rollup.time-zone}")
+    private ZoneId timeZone;
+
+    @Transactional
+    @Scheduled(cron = "${app.daily-order-revenue.reconcile-cron}")
+    public void reconcile() {
+        final var to = LocalDate.now(timeZone);
+        final var from = to.minusDays(reconcileDays);
+        final var corrected = ((Number) entityManager
+                .createNativeQuery("select reconcile_daily_order_revenue(:from, :to)")
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getSingleResult()).longValue();
+        if (corrected > 0) {
+            log.warn("Daily order revenue from {} to {} was out of sync, corrected {} days", from, to, corrected);
+        } else {
+            log.info("Daily order revenue from {} to {} is in sync", from, to);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ru.denis5726.criteriaarticle.job;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.denis5726.criteriaarticle.config.properties.OrderRevenueRollupProperties;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+// Периодическая сверка order_revenue_rollup с исходными таблицами. Как и в DailyOrderRevenueReconcileJob,
+// сверяются только последние дни, но целыми месяцами: с начала месяца, в который попадает первый из них
+@Slf4j
+@Component
+public class OrderRevenueRollupReconcileJob {
+    private final EntityManager entityManager;
+    private final OrderRevenueRollupProperties properties;
+    private final ZoneId timeZone;
+
+    public OrderRevenueRollupReconcileJob(
+            EntityManager entityManager,
+            OrderRevenueRollupProperties properties,
+            @Value("${app.rollup.time-zone}") ZoneId timeZone
+    ) {
+        this.entityManager = entityManager;
+        this.properties = properties;
+        this.timeZone = timeZone;
+    }
+
+    @Transactional
+    @Scheduled(cron = "${app.order-revenue-rollup.reconcile-cron}")
+    public void reconcile() {
+        final var from = LocalDate.now(timeZone).minusDays(properties.getReconcileDays());
+        final var corrected = ((Number) entityManager
+                .createNativeQuery("select reconcile_order_revenue_rollup(:from)")
+                .setParameter("from", from)
+                .getSingleResult()).longValue();
+        if (corrected > 0) {
+            log.warn("Order revenue rollup since month of {} was out of sync, corrected {} rows", from, corrected);
+        } else {
+            log.info("Order revenue rollup since month of {} is in sync", from);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.denis5726.criteriaarticle.job;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+// Обслуживание месячных партиций order и order_status_history: создание партиций на premake-months
+// вперёд, чтобы новые заказы не попадали в партицию по умолчанию, и перенос месяцев старше
+// retention-months в схему archive. Выполняется и при запуске, если приложение долго не работало
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PartitionMaintenanceJob {
+    private static final List<String> PARTITIONED_TABLES = List.of("order", "order_status_history");
+
+    private final EntityManager entityManager;
+    @Value("${app.partitions.premake-months}")
+    private int premakeMonths;
+    @Value("${app.partitions.retention-months}")
+    private int retentionMonths;
+    // Границы месяцев в партициях считаются в той же зоне, что и дни в агрегатах выручки
+    @Value("${app.rollup.time-zone}")
+    private ZoneId timeZone;
+
+    @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${app.partitions.maintenance-cron}")
+    public void maintain() {
+        final var month = LocalDate.now(timeZone).withDayOfMonth(1);
+        for (final var table : PARTITIONED_TABLES) {
+            final var created = ((Number) entityManager
+                    .createNativeQuery("select create_monthly_partitions(:table, :from, :to)")
+                    .setParameter("table", table)
+                    .setParameter("from", month)
+                    .setParameter("to", month.plusMonths(premakeMonths))
+                    .getSingleResult()).intValue();
+            if (created > 0) {
+                log.info("Created {} monthly partitions of {} up to {}", created, table, month.plusMonths(premakeMonths));
+            }
+            if (retentionMonths > 0) {
+                final var before = month.minusMonths(retentionMonths);
+                final var archived = ((Number) entityManager
+                        .createNativeQuery("select archive_monthly_partitions(:table, :before)")
+                        .setParameter("table", table)
+                        .setParameter("before", before)
+                        .getSingleResult()).intValue();
+                if (archived > 0) {
+                    log.warn("Moved {} monthly partitions of {} before {} to the archive schema", archived, table, before);
+                }
+            }
+        }
+    }
+}
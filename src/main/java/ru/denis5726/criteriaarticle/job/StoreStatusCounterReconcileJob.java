@@ -0,0 +1,30 @@
+package ru.denis5726.criteriaarticle.job;
+
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+// Периодическая сверка счётчиков store_status_counter с исходными таблицами.
+// Триггеры поддерживают счётчики сами, сверка нужна на случай ручных правок БД или ошибок в триггерах
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StoreStatusCounterReconcileJob {
+    private final EntityManager entityManager;
+
+    @Transactional
+    @Scheduled(cron = "${app.store-status-counter.reconcile-cron}")
+    public void reconcile() {
+        final var corrected = ((Number) entityManager
+                .createNativeQuery("select reconcile_store_status_counter()")
+                .getSingleResult()).longValue();
+        if (corrected > 0) {
+            log.warn("Store status counters were out of sync, corrected {} rows", corrected);
+        } else {
+            log.info("Store status counters are in sync");
+        }
+    }
+}
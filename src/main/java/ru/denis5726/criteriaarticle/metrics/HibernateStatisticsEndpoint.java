@@ -0,0 +1,42 @@
+package ru.denis5726.criteriaarticle.metrics;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.SessionFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Статистика Hibernate (hibernate.generate_statistics): /actuator/hibernate
+@Component
+@Endpoint(id = "hibernate")
+@RequiredArgsConstructor
+public class HibernateStatisticsEndpoint {
+    private final EntityManagerFactory entityManagerFactory;
+
+    @ReadOperation
+    public Map<String, Object> statistics() {
+        final var statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        final var result = new LinkedHashMap<String, Object>();
+        result.put("enabled", statistics.isStatisticsEnabled());
+        result.put("startTime", statistics.getStart());
+        final var planCacheHits = statistics.getQueryPlanCacheHitCount();
+        final var planCacheMisses = statistics.getQueryPlanCacheMissCount();
+        result.put("queryPlanCacheHitCount", planCacheHits);
+        result.put("queryPlanCacheMissCount", planCacheMisses);
+        result.put("queryPlanCacheHitRatio",
+                planCacheHits + planCacheMisses == 0 ? 0.0 : (double) planCacheHits / (planCacheHits + planCacheMisses));
+        result.put("queryExecutionCount", statistics.getQueryExecutionCount());
+        result.put("queryExecutionMaxTimeMs", statistics.getQueryExecutionMaxTime());
+        result.put("entityLoadCount", statistics.getEntityLoadCount());
+        result.put("entityFetchCount", statistics.getEntityFetchCount());
+        result.put("collectionLoadCount", statistics.getCollectionLoadCount());
+        result.put("prepareStatementCount", statistics.getPrepareStatementCount());
+        result.put("sessionOpenCount", statistics.getSessionOpenCount());
+        result.put("transactionCount", statistics.getTransactionCount());
+        return result;
+    }
+}
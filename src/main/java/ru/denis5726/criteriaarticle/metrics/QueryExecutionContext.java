@@ -0,0 +1,51 @@
+package ru.denis5726.criteriaarticle.metrics;
+
+// Данные о выполнении текущего запроса в потоке: время выполнения JDBC-команд и последний SQL.
+// Заполняется хуками Hibernate, которые создаёт сам Hibernate, а не Spring, поэтому хранится в ThreadLocal
+final class QueryExecutionContext {
+    private static final ThreadLocal<QueryExecutionContext> CURRENT =
+            ThreadLocal.withInitial(QueryExecutionContext::new);
+
+    private long jdbcExecuteNanos;
+    private long jdbcExecuteStartedAt;
+    private String sql;
+
+    private QueryExecutionContext() {
+    }
+
+    static QueryExecutionContext current() {
+        return CURRENT.get();
+    }
+
+    // Объект переиспользуется, чтобы не создавать новый на каждый запрос
+    static QueryExecutionContext start() {
+        final var context = CURRENT.get();
+        context.jdbcExecuteNanos = 0;
+        context.jdbcExecuteStartedAt = 0;
+        context.sql = null;
+        return context;
+    }
+
+    void jdbcExecuteStarted() {
+        jdbcExecuteStartedAt = System.nanoTime();
+    }
+
+    void jdbcExecuteFinished() {
+        if (jdbcExecuteStartedAt != 0) {
+            jdbcExecuteNanos += System.nanoTime() - jdbcExecuteStartedAt;
+            jdbcExecuteStartedAt = 0;
+        }
+    }
+
+    void sqlPrepared(String sql) {
+        this.sql = sql;
+    }
+
+    long getJdbcExecuteNanos() {
+        return jdbcExecuteNanos;
+    }
+
+    String getSql() {
+        return sql;
+    }
+}
@@ -0,0 +1,26 @@
+package ru.denis5726.criteriaarticle.metrics;
+
+import org.hibernate.SessionEventListener;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Хуки Hibernate для QueryMetrics: время выполнения JDBC-команд (SessionEventListener)
+// и текст SQL (StatementInspector), регистрируются в JpaConfig
+public class QueryExecutionListener implements SessionEventListener, StatementInspector {
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        QueryExecutionContext.current().jdbcExecuteStarted();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        QueryExecutionContext.current().jdbcExecuteFinished();
+    }
+
+    @Override
+    public String inspect(String sql) {
+        // SQL не меняется, только запоминается для журнала медленных запросов
+        QueryExecutionContext.current().sqlPrepared(sql);
+        return sql;
+    }
+}
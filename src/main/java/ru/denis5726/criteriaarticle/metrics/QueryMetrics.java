@@ -0,0 +1,109 @@
+package ru.denis5726.criteriaarticle.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.TypedQuery;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.denis5726.criteriaarticle.config.properties.QueryMetricsProperties;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Выполнение запросов репозитория с замером времени и количества строк.
+// Метрики с тегом query (имя метода репозитория):
+// repository.query - общее время, repository.query.jdbc - время выполнения JDBC-команд,
+// repository.query.mapping - остальное время (чтение строк из ResultSet и создание объектов),
+// repository.query.rows - количество строк в результате
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueryMetrics {
+    private final MeterRegistry meterRegistry;
+    private final QueryMetricsProperties properties;
+    private final Map<String, QueryMeters> meters = new ConcurrentHashMap<>();
+
+    public <T> List<T> list(String queryName, TypedQuery<T> query) {
+        final var context = QueryExecutionContext.start();
+        final var startedAt = System.nanoTime();
+        final var result = query.getResultList();
+        record(queryName, query, context, System.nanoTime() - startedAt, result.size());
+        return result;
+    }
+
+    // Замер заканчивается при закрытии потока. Драйвер дочитывает строки из курсора уже при обходе потока,
+    // поэтому в repository.query.jdbc попадает только первая порция, а остальное - в repository.query.mapping
+    public <T> Stream<T> stream(String queryName, TypedQuery<T> query) {
+        final var context = QueryExecutionContext.start();
+        final var startedAt = System.nanoTime();
+        final var rows = new long[1];
+        return query.getResultStream()
+                .peek(row -> rows[0]++)
+                .onClose(() -> record(queryName, query, context, System.nanoTime() - startedAt, rows[0]));
+    }
+
+    private void record(String queryName, TypedQuery<?> query, QueryExecutionContext context, long nanos, long rows) {
+        final var queryMeters = meters.computeIfAbsent(queryName, this::createMeters);
+        final var jdbcNanos = Math.min(context.getJdbcExecuteNanos(), nanos);
+        queryMeters.total().record(nanos, TimeUnit.NANOSECONDS);
+        queryMeters.jdbc().record(jdbcNanos, TimeUnit.NANOSECONDS);
+        queryMeters.mapping().record(nanos - jdbcNanos, TimeUnit.NANOSECONDS);
+        queryMeters.rows().record(rows);
+
+        final var threshold = properties.getSlowQueryThreshold();
+        if (!threshold.isZero() && nanos >= threshold.toNanos()) {
+            // Параметры и SQL собираются только для медленных запросов
+            log.warn("Slow query {}: {} ms (jdbc {} ms), {} rows\nSQL: {}\nParameters: {}",
+                    queryName,
+                    TimeUnit.NANOSECONDS.toMillis(nanos),
+                    TimeUnit.NANOSECONDS.toMillis(jdbcNanos),
+                    rows,
+                    context.getSql(),
+                    describeParameters(query));
+        }
+    }
+
+    private QueryMeters createMeters(String queryName) {
+        return new QueryMeters(
+                timer("repository.query", "Total query execution time", queryName),
+                timer("repository.query.jdbc", "JDBC statement execution time", queryName),
+                timer("repository.query.mapping", "Result reading and mapping time", queryName),
+                DistributionSummary.builder("repository.query.rows")
+                        .description("Rows returned by query")
+                        .tag("query", queryName)
+                        .publishPercentileHistogram(properties.isPercentileHistogram())
+                        .register(meterRegistry)
+        );
+    }
+
+    private Timer timer(String name, String description, String queryName) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("query", queryName)
+                .publishPercentileHistogram(properties.isPercentileHistogram())
+                .register(meterRegistry);
+    }
+
+    private static String describeParameters(TypedQuery<?> query) {
+        final var parameters = new StringJoiner(", ", "{", "}");
+        for (final var parameter : query.getParameters()) {
+            // Безымянные параметры - это значения, встроенные в сам запрос (например, 0 в CASE)
+            if (parameter.getName() != null && query.isBound(parameter)) {
+                final var value = query.getParameterValue(parameter);
+                parameters.add(parameter.getName() + "="
+                        + (value instanceof Object[] array ? Arrays.toString(array) : value));
+            }
+        }
+        return parameters.toString();
+    }
+
+    private record QueryMeters(Timer total, Timer jdbc, Timer mapping, DistributionSummary rows) {
+    }
+}
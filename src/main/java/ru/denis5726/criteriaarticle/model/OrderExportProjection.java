@@ -0,0 +1,27 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.denis5726.criteriaarticle.entity.Order;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+// Строка выгрузки: позиция заказа вместе с заказом и товаром
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderExportProjection {
+    private UUID orderId;
+    private UUID storeId;
+    private UUID customerId;
+    private Order.Status status;
+    private ZonedDateTime createdAt;
+    private ZonedDateTime finishedAt;
+    private UUID productId;
+    private UUID categoryId;
+    private Long quantity;
+    private BigDecimal price;
+}
@@ -0,0 +1,31 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.denis5726.criteriaarticle.entity.Order;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// Условия выборки заказов для дашбордов. null - условия нет, все заданные условия объединяются через AND
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderFilter {
+    private UUID storeId;
+    private UUID customerId;
+    private List<Order.Status> statuses;
+    // Границы стоимости заказа включительно
+    private BigDecimal minTotalPrice;
+    private BigDecimal maxTotalPrice;
+    // Время создания в полуинтервале [createdFrom, createdTo)
+    private ZonedDateTime createdFrom;
+    private ZonedDateTime createdTo;
+    // Заказы, в которых есть товар из категории с этим именем или любой из её подкатегорий
+    private String categoryName;
+}
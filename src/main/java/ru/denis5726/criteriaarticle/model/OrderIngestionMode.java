@@ -0,0 +1,8 @@
+package ru.denis5726.criteriaarticle.model;
+
+public enum OrderIngestionMode {
+    // Сущности через Hibernate с пакетной отправкой INSERT (hibernate.jdbc.batch_size)
+    BATCH,
+    // Строки напрямую в COPY postgres, без создания сущностей
+    COPY
+}
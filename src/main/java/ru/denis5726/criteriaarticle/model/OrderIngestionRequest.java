@@ -0,0 +1,32 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.denis5726.criteriaarticle.entity.Order;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+// Заказ из пачки массовой загрузки. Идентификаторы и время создания назначаются при загрузке
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderIngestionRequest {
+    private UUID storeId;
+    private UUID customerId;
+    private Order.Status status;
+    private ZonedDateTime finishedAt;
+    private List<Item> items = List.of();
+    // Статусы заказа в порядке их смены
+    private List<Order.Status> history = List.of();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+        private UUID productId;
+        private Long quantity;
+    }
+}
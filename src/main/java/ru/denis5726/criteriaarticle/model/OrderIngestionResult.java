@@ -0,0 +1,20 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderIngestionResult {
+    private OrderIngestionMode mode;
+    private int orderCount;
+    private int itemCount;
+    private int historyRecordCount;
+    // Время записи пачки, включая фиксацию транзакции
+    private long durationMillis;
+    private long ordersPerSecond;
+    // Строки всех таблиц (заказы, позиции и история статусов) в секунду
+    private long rowsPerSecond;
+}
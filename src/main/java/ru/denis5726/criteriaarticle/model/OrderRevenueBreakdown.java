@@ -0,0 +1,8 @@
+package ru.denis5726.criteriaarticle.model;
+
+// Разрез ряда выручки: одна сумма на интервал или по сумме на каждый магазин или категорию товаров
+public enum OrderRevenueBreakdown {
+    TOTAL,
+    STORE,
+    CATEGORY
+}
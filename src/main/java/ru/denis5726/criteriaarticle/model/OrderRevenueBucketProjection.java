@@ -0,0 +1,21 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderRevenueBucketProjection {
+    // Начало интервала
+    private OffsetDateTime bucket;
+    // id магазина или категории в разрезах STORE и CATEGORY
+    private UUID key;
+    private BigDecimal totalAmount;
+    private Long itemCount;
+}
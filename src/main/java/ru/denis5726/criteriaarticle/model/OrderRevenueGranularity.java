@@ -0,0 +1,11 @@
+package ru.denis5726.criteriaarticle.model;
+
+// Длина интервала в ряду выручки (/orderRevenueSeries). В order_revenue_rollup хранятся уровни
+// HOUR, DAY и MONTH, недели собираются из дней
+public enum OrderRevenueGranularity {
+    HOUR,
+    DAY,
+    // Неделя с понедельника
+    WEEK,
+    MONTH
+}
@@ -0,0 +1,46 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+// Курсор keyset-пагинации: пара (createdAt, id) последней отданной строки.
+// Клиенту курсор отдаётся непрозрачной строкой, чтобы формат можно было менять
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSentInStoreCursor {
+    private static final String SEPARATOR = "_";
+
+    private ZonedDateTime createdAt;
+    private UUID id;
+
+    public static OrderSentInStoreCursor of(OrderSentInStoreProjection projection) {
+        return new OrderSentInStoreCursor(projection.getCreatedAt(), projection.getId());
+    }
+
+    public static OrderSentInStoreCursor decode(String token) {
+        final var decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        final var separatorIndex = decoded.indexOf(SEPARATOR);
+        if (separatorIndex < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        return new OrderSentInStoreCursor(
+                // timestamptz хранит момент времени, поэтому зона курсора значения не имеет
+                ZonedDateTime.ofInstant(Instant.parse(decoded.substring(0, separatorIndex)), ZoneOffset.UTC),
+                UUID.fromString(decoded.substring(separatorIndex + 1))
+        );
+    }
+
+    public String encode() {
+        final var raw = createdAt.toInstant() + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
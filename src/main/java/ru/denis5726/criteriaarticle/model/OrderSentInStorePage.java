@@ -0,0 +1,16 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSentInStorePage {
+    private List<OrderSentInStoreProjection> content;
+    // null, если страница последняя
+    private String nextCursor;
+}
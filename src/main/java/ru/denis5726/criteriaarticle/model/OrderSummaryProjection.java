@@ -0,0 +1,22 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ru.denis5726.criteriaarticle.entity.Order;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryProjection {
+    private UUID id;
+    private UUID storeId;
+    private UUID customerId;
+    private Order.Status status;
+    private ZonedDateTime createdAt;
+    private BigDecimal totalPrice;
+}
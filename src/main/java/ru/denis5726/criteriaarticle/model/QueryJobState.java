@@ -0,0 +1,15 @@
+package ru.denis5726.criteriaarticle.model;
+
+public enum QueryJobState {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    // Запрос прерван по statement_timeout
+    TIMED_OUT,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this != QUEUED && this != RUNNING;
+    }
+}
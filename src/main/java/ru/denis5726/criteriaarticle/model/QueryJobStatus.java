@@ -0,0 +1,28 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryJobStatus {
+    private UUID id;
+    private QueryJobType type;
+    private Map<String, Object> parameters;
+    private QueryJobState state;
+    private Instant submittedAt;
+    // null, пока задание в очереди
+    private Instant startedAt;
+    // null, пока задание не завершено
+    private Instant finishedAt;
+    // Количество строк результата, если задание выполнено
+    private Integer rowCount;
+    // Причина ошибки для FAILED и TIMED_OUT
+    private String error;
+}
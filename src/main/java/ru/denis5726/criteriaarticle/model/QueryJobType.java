@@ -0,0 +1,7 @@
+package ru.denis5726.criteriaarticle.model;
+
+// Запросы, которые можно выполнить асинхронным заданием (/jobs)
+public enum QueryJobType {
+    STORE_STATISTIC,
+    ORDERS_WITH_PRODUCT_CATEGORY
+}
@@ -0,0 +1,16 @@
+package ru.denis5726.criteriaarticle.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Веса количеств заказов в сумме, по которой ранжируются магазины в findTopStoreStatistic.
+// С единичными весами порядок тот же, что и в findStoreStatistic
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoreStatisticWeights {
+    private double completed = 1;
+    private double canceled = 1;
+    private double rejected = 1;
+}
@@ -2,25 +2,72 @@ package ru.denis5726.criteriaarticle.repository;
 
 import ru.denis5726.criteriaarticle.entity.Order;
 import ru.denis5726.criteriaarticle.model.OrderDayStatisticProjection;
+import ru.denis5726.criteriaarticle.model.OrderExportProjection;
+import ru.denis5726.criteriaarticle.model.OrderFilter;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBreakdown;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBucketProjection;
+import ru.denis5726.criteriaarticle.model.OrderRevenueGranularity;
+import ru.denis5726.criteriaarticle.model.OrderSentInStoreCursor;
 import ru.denis5726.criteriaarticle.model.OrderSentInStoreProjection;
 import ru.denis5726.criteriaarticle.model.OrderShortInfoProjection;
 import ru.denis5726.criteriaarticle.model.OrderStoreStatisticProjection;
+import ru.denis5726.criteriaarticle.model.OrderSummaryProjection;
 import ru.denis5726.criteriaarticle.model.OrderWithTotalPriceProjection;
+import ru.denis5726.criteriaarticle.model.StoreStatisticWeights;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 public interface OrderRepository {
 
     List<OrderSentInStoreProjection> findSentInStoreOrdersByStoreId(UUID storeId);
 
+    // after == null означает первую страницу
+    List<OrderSentInStoreProjection> findSentInStoreOrdersByStoreId(
+            UUID storeId,
+            OrderSentInStoreCursor after,
+            int limit
+    );
+
+    // Те же строки, что и findSentInStoreOrdersByStoreId, в виде массивов [id, createdAt, totalPrice]
+    // без создания проекций. Стрим держит открытым курсор JDBC, поэтому его нужно закрывать
+    // и читать внутри транзакции
+    Stream<Object[]> streamSentInStoreOrdersByStoreId(UUID storeId, int fetchSize);
+
     List<OrderStoreStatisticProjection> findStoreStatistic(BigDecimal lowerBound, BigDecimal upperBound);
 
+    // Первые limit магазинов из findStoreStatistic по взвешенной сумме количеств заказов,
+    // при равной сумме по id магазина
+    List<OrderStoreStatisticProjection> findTopStoreStatistic(
+            BigDecimal lowerBound,
+            BigDecimal upperBound,
+            StoreStatisticWeights weights,
+            int limit
+    );
+
     List<OrderShortInfoProjection> findOrderWithProductInCategories(List<String> categoryNames);
 
     List<OrderWithTotalPriceProjection> findOrderWithProductCategory(String categoryName);
 
     List<OrderDayStatisticProjection> findOrderDayStatistic(LocalDate startDate, LocalDate endDate);
+
+    // Строки order_revenue_rollup одного уровня и разреза с началом в полуинтервале [from, to),
+    // по возрастанию начала и key. Интервалы в разных зонах собирает из них OrderRevenueSeriesService
+    List<OrderRevenueBucketProjection> findOrderRevenueRollup(
+            OrderRevenueGranularity granularity,
+            OrderRevenueBreakdown breakdown,
+            OffsetDateTime from,
+            OffsetDateTime to
+    );
+
+    // Первые limit заказов под фильтр, сначала новые. ResponseStatusException 400, если фильтр некорректен
+    // или в нём нет условия, по которому заказы можно найти по индексу
+    List<OrderSummaryProjection> findOrders(OrderFilter filter, int limit);
+
+    // Все позиции всех заказов для выгрузки, как и streamSentInStoreOrdersByStoreId читается курсором
+    Stream<OrderExportProjection> streamOrderExportRows(int fetchSize);
 }
@@ -0,0 +1,236 @@
+package ru.denis5726.criteriaarticle.repository.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.Predicate;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaCriteriaQuery;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import ru.denis5726.criteriaarticle.config.properties.OrderFilterProperties;
+import ru.denis5726.criteriaarticle.entity.Category_;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.entity.OrderItem;
+import ru.denis5726.criteriaarticle.entity.OrderItem_;
+import ru.denis5726.criteriaarticle.entity.Order_;
+import ru.denis5726.criteriaarticle.entity.Product_;
+import ru.denis5726.criteriaarticle.index.CategoryTreeIndex;
+import ru.denis5726.criteriaarticle.model.OrderFilter;
+import ru.denis5726.criteriaarticle.model.OrderSummaryProjection;
+import ru.denis5726.criteriaarticle.repository.query.PreparedCriteriaQuery;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Запросы выборки заказов по OrderFilter. Вид запроса зависит только от набора заданных условий,
+// а не от их значений и порядка, в котором их передал клиент. Для каждого набора дерево запроса
+// строится один раз и используется повторно, как в OrderQueries, поэтому Hibernate переводит его в SQL
+// один раз, а одинаковый текст SQL позволяет переиспользовать и подготовленный запрос в postgres.
+// Списки значений передаются одним параметром-массивом, их длина не меняет текст запроса (кроме статусов).
+// JOIN с позициями и товарами добавляется, только если задана категория
+@Component
+class OrderFilterQueries {
+    // Порядок констант - порядок условий в WHERE и привязки параметров
+    enum Criterion {
+        STORE("storeId"),
+        CATEGORY("categoryIds"),
+        CREATED_FROM("createdFrom"),
+        CREATED_TO("createdTo"),
+        CUSTOMER("customerId"),
+        STATUSES("statuses"),
+        MIN_TOTAL_PRICE("minTotalPrice"),
+        MAX_TOTAL_PRICE("maxTotalPrice");
+
+        final String parameter;
+
+        Criterion(String parameter) {
+            this.parameter = parameter;
+        }
+    }
+
+    private final HibernateCriteriaBuilder cb;
+    private final OrderFilterProperties properties;
+    private final CategoryTreeIndex categoryTreeIndex;
+    // Наборов условий не больше 2^8, поэтому размер кэша не ограничивается
+    private final Map<Set<Criterion>, PreparedCriteriaQuery<OrderSummaryProjection>> queries =
+            new ConcurrentHashMap<>();
+
+    OrderFilterQueries(
+            EntityManagerFactory entityManagerFactory,
+            OrderFilterProperties properties,
+            CategoryTreeIndex categoryTreeIndex
+    ) {
+        this.cb = entityManagerFactory.unwrap(SessionFactory.class).getCriteriaBuilder();
+        this.properties = properties;
+        this.categoryTreeIndex = categoryTreeIndex;
+    }
+
+    // Проверяет фильтр и подбирает для него запрос с параметрами. 400, если фильтр противоречив
+    // или в нём нет условия, по которому заказы можно найти по индексу.
+    // null, если под фильтр заведомо не подходит ни один заказ (нет категории с таким именем)
+    BoundQuery bind(OrderFilter filter) {
+        validate(filter);
+
+        final var values = new EnumMap<Criterion, Object>(Criterion.class);
+        putIfPresent(values, Criterion.STORE, filter.getStoreId());
+        putIfPresent(values, Criterion.CREATED_FROM, filter.getCreatedFrom());
+        putIfPresent(values, Criterion.CREATED_TO, filter.getCreatedTo());
+        putIfPresent(values, Criterion.CUSTOMER, filter.getCustomerId());
+        putIfPresent(values, Criterion.MIN_TOTAL_PRICE, filter.getMinTotalPrice());
+        putIfPresent(values, Criterion.MAX_TOTAL_PRICE, filter.getMaxTotalPrice());
+        if (filter.getStatuses() != null && !filter.getStatuses().isEmpty()) {
+            final var statuses = EnumSet.copyOf(filter.getStatuses());
+            // Условие на все статусы ничего не отбирает, запрос без него тот же по смыслу
+            if (statuses.size() < Order.Status.values().length) {
+                values.put(Criterion.STATUSES, List.copyOf(statuses));
+            }
+        }
+        if (filter.getCategoryName() != null) {
+            // Поддерево берём из дерева в памяти, как и в findOrderWithProductCategory
+            final var categoryIds = categoryTreeIndex.findSubtreeIds(filter.getCategoryName());
+            if (categoryIds.isEmpty()) {
+                return null;
+            }
+            values.put(Criterion.CATEGORY, categoryIds.toArray(UUID[]::new));
+        }
+
+        // EnumSet как ключ: равные наборы условий равны независимо от порядка добавления
+        final var criteria = EnumSet.noneOf(Criterion.class);
+        criteria.addAll(values.keySet());
+        return new BoundQuery(getQuery(criteria), values);
+    }
+
+    PreparedCriteriaQuery<OrderSummaryProjection> getQuery(Set<Criterion> criteria) {
+        return queries.computeIfAbsent(
+                criteria,
+                key -> new PreparedCriteriaQuery<>(createOrderFilterQuery(cb, key))
+        );
+    }
+
+    static JpaCriteriaQuery<OrderSummaryProjection> createOrderFilterQuery(
+            HibernateCriteriaBuilder cb,
+            Set<Criterion> criteria
+    ) {
+        final var query = cb.createQuery(OrderSummaryProjection.class);
+        final var order = query.from(Order.class);
+
+        final var predicates = new ArrayList<Predicate>();
+        for (final var criterion : Criterion.values()) {
+            if (!criteria.contains(criterion)) {
+                continue;
+            }
+            predicates.add(switch (criterion) {
+                case STORE -> cb.equal(order.get(Order_.STORE_ID), cb.parameter(UUID.class, criterion.parameter));
+                case CATEGORY -> {
+                    // Как в OrderQueries: id заказов с товаром из категорий находим по индексам
+                    // product(category_id) и order_item(product_id), сами строки позиций в результат не попадают.
+                    // Условие category_id = any(?), а не arrayContains: иначе индекс по category_id не используется
+                    final var categoryOrderIds = query.subquery(UUID.class);
+                    final var orderItem = categoryOrderIds.from(OrderItem.class);
+                    categoryOrderIds
+                            .select(orderItem.get(OrderItem_.ORDER).get(Order_.ID))
+                            .where(cb.isTrue(OrderQueries.equalsAny(
+                                    cb,
+                                    orderItem.join(OrderItem_.PRODUCT).get(Product_.CATEGORY).get(Category_.ID),
+                                    cb.parameter(UUID[].class, criterion.parameter)
+                            )));
+                    yield order.get(Order_.ID).in(categoryOrderIds);
+                }
+                case CREATED_FROM -> cb.greaterThanOrEqualTo(
+                        order.get(Order_.CREATED_AT),
+                        cb.parameter(ZonedDateTime.class, criterion.parameter)
+                );
+                case CREATED_TO -> cb.lessThan(
+                        order.get(Order_.CREATED_AT),
+                        cb.parameter(ZonedDateTime.class, criterion.parameter)
+                );
+                case CUSTOMER -> cb.equal(
+                        order.get(Order_.CUSTOMER_ID),
+                        cb.parameter(UUID.class, criterion.parameter)
+                );
+                // Массив перечислений array_contains не принимает, поэтому здесь IN со списком.
+                // Число параметров в IN выравнивается до степени двойки (in_clause_parameter_padding),
+                // так что для семи статусов возможны всего четыре варианта текста SQL
+                case STATUSES -> order.get(Order_.STATUS).in(cb.parameter(Order.Status.class, criterion.parameter));
+                // Стоимость заказа поддерживается триггерами позиций, JOIN с order_item не нужен
+                case MIN_TOTAL_PRICE -> cb.greaterThanOrEqualTo(
+                        order.get(Order_.TOTAL_AMOUNT),
+                        cb.parameter(BigDecimal.class, criterion.parameter)
+                );
+                case MAX_TOTAL_PRICE -> cb.lessThanOrEqualTo(
+                        order.get(Order_.TOTAL_AMOUNT),
+                        cb.parameter(BigDecimal.class, criterion.parameter)
+                );
+            });
+        }
+
+        return query
+                .select(cb.construct(
+                        OrderSummaryProjection.class,
+                        order.get(Order_.ID),
+                        order.get(Order_.STORE_ID),
+                        order.get(Order_.CUSTOMER_ID),
+                        order.get(Order_.STATUS),
+                        order.get(Order_.CREATED_AT),
+                        order.get(Order_.TOTAL_AMOUNT)
+                ))
+                .where(predicates.toArray(Predicate[]::new))
+                // Сначала новые заказы, id делает порядок однозначным
+                .orderBy(cb.desc(order.get(Order_.CREATED_AT)), cb.desc(order.get(Order_.ID)));
+    }
+
+    // Заказов слишком много, чтобы отбирать их только по покупателю, статусу или стоимости:
+    // для этих столбцов индексов нет, и такой запрос читал бы все партиции order.
+    // Поэтому в фильтре должен быть магазин, категория или ограниченный с обеих сторон интервал времени создания
+    private void validate(OrderFilter filter) {
+        final var createdFrom = filter.getCreatedFrom();
+        final var createdTo = filter.getCreatedTo();
+        if (createdFrom != null && createdTo != null && !createdFrom.isBefore(createdTo)) {
+            throw badRequest("createdFrom must be before createdTo");
+        }
+        if (filter.getMinTotalPrice() != null && filter.getMaxTotalPrice() != null
+                && filter.getMinTotalPrice().compareTo(filter.getMaxTotalPrice()) > 0) {
+            throw badRequest("minTotalPrice must not be greater than maxTotalPrice");
+        }
+        final var createdRangeIndexed = createdFrom != null && createdTo != null
+                && Duration.between(createdFrom, createdTo).compareTo(properties.getMaxCreatedRange()) <= 0;
+        if (filter.getStoreId() == null && filter.getCategoryName() == null && !createdRangeIndexed) {
+            throw badRequest(
+                    "Order filter must contain storeId, categoryName or createdFrom and createdTo at most "
+                            + properties.getMaxCreatedRange().toDays() + " days apart"
+            );
+        }
+    }
+
+    // Не IllegalArgumentException: трансляция исключений @Repository превратила бы его в ошибку доступа к данным
+    private static ResponseStatusException badRequest(String reason) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
+    }
+
+    private static void putIfPresent(Map<Criterion, Object> values, Criterion criterion, Object value) {
+        if (value != null) {
+            values.put(criterion, value);
+        }
+    }
+
+    record BoundQuery(PreparedCriteriaQuery<OrderSummaryProjection> query, Map<Criterion, Object> values) {
+
+        TypedQuery<OrderSummaryProjection> createQuery(EntityManager entityManager) {
+            final var typedQuery = query.createQuery(entityManager);
+            values.forEach((criterion, value) -> typedQuery.setParameter(criterion.parameter, value));
+            return typedQuery;
+        }
+    }
+}
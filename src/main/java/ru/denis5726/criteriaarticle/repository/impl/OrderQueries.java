@@ -0,0 +1,509 @@
+package ru.denis5726.criteriaarticle.repository.impl;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import lombok.Getter;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaCriteriaQuery;
+import org.springframework.stereotype.Component;
+import ru.denis5726.criteriaarticle.config.JpaConfig;
+import ru.denis5726.criteriaarticle.entity.Category_;
+import ru.denis5726.criteriaarticle.entity.DailyOrderRevenue;
+import ru.denis5726.criteriaarticle.entity.DailyOrderRevenue_;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.entity.OrderItem;
+import ru.denis5726.criteriaarticle.entity.OrderItem_;
+import ru.denis5726.criteriaarticle.entity.OrderRevenueRollup;
+import ru.denis5726.criteriaarticle.entity.OrderRevenueRollup_;
+import ru.denis5726.criteriaarticle.entity.OrderStatusHistory;
+import ru.denis5726.criteriaarticle.entity.OrderStatusHistory_;
+import ru.denis5726.criteriaarticle.entity.Order_;
+import ru.denis5726.criteriaarticle.entity.Product_;
+import ru.denis5726.criteriaarticle.entity.StoreStatusCounter;
+import ru.denis5726.criteriaarticle.entity.StoreStatusCounter_;
+import ru.denis5726.criteriaarticle.model.OrderDayStatisticProjection;
+import ru.denis5726.criteriaarticle.model.OrderExportProjection;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBreakdown;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBucketProjection;
+import ru.denis5726.criteriaarticle.model.OrderRevenueGranularity;
+import ru.denis5726.criteriaarticle.model.OrderSentInStoreProjection;
+import ru.denis5726.criteriaarticle.model.OrderShortInfoProjection;
+import ru.denis5726.criteriaarticle.model.OrderWithTotalPriceProjection;
+import ru.denis5726.criteriaarticle.repository.query.PreparedCriteriaQuery;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+// Запросы OrderRepositoryImpl. Каждый вариант запроса строится один раз при старте приложения,
+// значения, которые меняются от вызова к вызову, передаются именованными параметрами
+@Getter
+@Component
+class OrderQueries {
+    static final String STORE_ID = "storeId";
+    static final String CURSOR_CREATED_AT = "cursorCreatedAt";
+    static final String CURSOR_ID = "cursorId";
+    static final String LOWER_BOUND = "lowerBound";
+    static final String UPPER_BOUND = "upperBound";
+    static final String FROM_STORE_ID = "fromStoreId";
+    static final String TO_STORE_ID = "toStoreId";
+    static final String COMPLETED_WEIGHT = "completedWeight";
+    static final String CANCELED_WEIGHT = "canceledWeight";
+    static final String REJECTED_WEIGHT = "rejectedWeight";
+    static final String CATEGORY_NAMES = "categoryNames";
+    static final String CATEGORY_IDS = "categoryIds";
+    static final String ORDINALS = "ordinals";
+    static final String START_DATE = "startDate";
+    static final String END_DATE = "endDate";
+    static final String GRANULARITY = "granularity";
+    static final String BREAKDOWN = "breakdown";
+    static final String FROM_BUCKET = "fromBucket";
+    static final String TO_BUCKET = "toBucket";
+
+    private final PreparedCriteriaQuery<OrderSentInStoreProjection> sentInStoreOrders;
+    // Вариант с keyset-условием для страниц после первой
+    private final PreparedCriteriaQuery<OrderSentInStoreProjection> sentInStoreOrdersAfterCursor;
+    private final PreparedCriteriaQuery<Object[]> sentInStoreOrderRows;
+    private final PreparedCriteriaQuery<Tuple> storeStatistic;
+    // Вариант для одного диапазона id магазинов (StoreStatisticShards)
+    private final PreparedCriteriaQuery<Tuple> storeStatisticShard;
+    // Первые магазины по взвешенной сумме счётчиков, с LIMIT
+    private final PreparedCriteriaQuery<Tuple> topStoreStatistic;
+    private final PreparedCriteriaQuery<Tuple> topStoreStatisticShard;
+    private final PreparedCriteriaQuery<OrderShortInfoProjection> orderWithProductInCategories;
+    // Заказы по номерам, найденным в CategoryOrderIndex
+    private final PreparedCriteriaQuery<OrderShortInfoProjection> ordersByOrdinals;
+    private final PreparedCriteriaQuery<OrderWithTotalPriceProjection> orderWithProductCategory;
+    private final PreparedCriteriaQuery<OrderDayStatisticProjection> orderDayStatistic;
+    private final PreparedCriteriaQuery<OrderExportProjection> orderExport;
+    private final PreparedCriteriaQuery<OrderRevenueBucketProjection> orderRevenueRollup;
+
+    OrderQueries(EntityManagerFactory entityManagerFactory) {
+        // CriteriaBuilder фабрики, а не сессии: запросы строятся вне транзакции и переживают любую сессию
+        final var cb = entityManagerFactory.unwrap(SessionFactory.class).getCriteriaBuilder();
+        sentInStoreOrders = new PreparedCriteriaQuery<>(createSentInStoreOrdersQuery(cb, false));
+        sentInStoreOrdersAfterCursor = new PreparedCriteriaQuery<>(createSentInStoreOrdersQuery(cb, true));
+        sentInStoreOrderRows = new PreparedCriteriaQuery<>(createSentInStoreOrderRowsQuery(cb));
+        storeStatistic = new PreparedCriteriaQuery<>(createStoreStatisticQuery(cb, false, false));
+        storeStatisticShard = new PreparedCriteriaQuery<>(createStoreStatisticQuery(cb, true, false));
+        topStoreStatistic = new PreparedCriteriaQuery<>(createStoreStatisticQuery(cb, false, true));
+        topStoreStatisticShard = new PreparedCriteriaQuery<>(createStoreStatisticQuery(cb, true, true));
+        orderWithProductInCategories = new PreparedCriteriaQuery<>(createOrderWithProductInCategoriesQuery(cb));
+        ordersByOrdinals = new PreparedCriteriaQuery<>(createOrdersByOrdinalsQuery(cb));
+        orderWithProductCategory = new PreparedCriteriaQuery<>(createOrderWithProductCategoryQuery(cb));
+        orderDayStatistic = new PreparedCriteriaQuery<>(createOrderDayStatisticQuery(cb));
+        orderExport = new PreparedCriteriaQuery<>(createOrderExportQuery(cb));
+        orderRevenueRollup = new PreparedCriteriaQuery<>(createOrderRevenueRollupQuery(cb));
+    }
+
+    // Построение запросов вынесено в отдельные методы, чтобы его можно было замерять отдельно от выполнения
+    static JpaCriteriaQuery<OrderSentInStoreProjection> createSentInStoreOrdersQuery(
+            HibernateCriteriaBuilder cb,
+            boolean afterCursor
+    ) {
+        return createSentInStoreOrdersQuery(
+                cb,
+                cb.createQuery(OrderSentInStoreProjection.class),
+                afterCursor,
+                columns -> cb.construct(OrderSentInStoreProjection.class, columns)
+        );
+    }
+
+    // Те же строки в виде массивов [id, createdAt, totalPrice], без создания проекций,
+    // для потоковой записи ответа значениями по одному
+    static JpaCriteriaQuery<Object[]> createSentInStoreOrderRowsQuery(HibernateCriteriaBuilder cb) {
+        return createSentInStoreOrdersQuery(cb, cb.createQuery(Object[].class), false, cb::array);
+    }
+
+    private static <T> JpaCriteriaQuery<T> createSentInStoreOrdersQuery(
+            HibernateCriteriaBuilder cb,
+            JpaCriteriaQuery<T> query,
+            boolean afterCursor,
+            Function<Selection<?>[], Selection<? extends T>> select
+    ) {
+        final var order = query.from(Order.class);
+
+        // Заказ, отправленный в магазин, - это заказ с записью SENT_TO_STORE в истории.
+        // Проверяем её подзапросом EXISTS, а не JOIN, поэтому строки заказа не размножаются и не нужна группировка
+        final var sentToStore = query.subquery(Integer.class);
+        final var orderStatusHistory = sentToStore.from(OrderStatusHistory.class);
+        sentToStore
+                .select(cb.literal(1))
+                .where(
+                        // Классы с названием сущности и "_" в конце сгенерированы с помощью
+                        // hibernate-jpamodelgen и содержат константы с названиями всех полей сущности
+                        cb.equal(
+                                orderStatusHistory.get(OrderStatusHistory_.ORDER).get(Order_.ID),
+                                order.get(Order_.ID)
+                        ),
+                        // Оборачиваем Order.Status.SENT_TO_STORE в cb.literal, чтобы передавать
+                        // 'SENT_TO_STORE' не JDBC-параметром (?), а константой
+                        cb.equal(
+                                orderStatusHistory.get(OrderStatusHistory_.STATUS),
+                                cb.literal(Order.Status.SENT_TO_STORE)
+                        )
+                );
+
+        final var predicates = new ArrayList<Predicate>();
+        predicates.add(cb.exists(sentToStore));
+        predicates.add(cb.equal(order.get(Order_.STORE_ID), cb.parameter(UUID.class, STORE_ID)));
+        // Заказы без позиций не выводятся, как и раньше при JOIN с order_item
+        predicates.add(cb.greaterThan(order.get(Order_.ITEM_COUNT), 0L));
+        if (afterCursor) {
+            final var cursorCreatedAt = cb.parameter(ZonedDateTime.class, CURSOR_CREATED_AT);
+            // Keyset-условие (created_at, id) < (:createdAt, :id) в порядке сортировки ниже
+            predicates.add(cb.or(
+                    cb.lessThan(order.get(Order_.CREATED_AT), cursorCreatedAt),
+                    cb.and(
+                            cb.equal(order.get(Order_.CREATED_AT), cursorCreatedAt),
+                            cb.lessThan(order.get(Order_.ID), cb.parameter(UUID.class, CURSOR_ID))
+                    )
+            ));
+        }
+
+        return query
+                .select(select.apply(new Selection<?>[]{
+                        order.get(Order_.ID),
+                        order.get(Order_.CREATED_AT),
+                        // Стоимость заказа поддерживается триггерами позиций, JOIN с order_item и product не нужен
+                        order.get(Order_.TOTAL_AMOUNT)
+                }))
+                .where(predicates.toArray(Predicate[]::new))
+                // id нужен как второй ключ сортировки, чтобы порядок был однозначным и курсор ничего не пропускал
+                .orderBy(cb.desc(order.get(Order_.CREATED_AT)), cb.desc(order.get(Order_.ID)));
+    }
+
+    // weighted: вместо суммы счётчиков сортировка по взвешенной сумме (столбец score), при равенстве по id магазина,
+    // чтобы первые limit строк были однозначными
+    static JpaCriteriaQuery<Tuple> createStoreStatisticQuery(
+            HibernateCriteriaBuilder cb,
+            boolean shard,
+            boolean weighted
+    ) {
+        final var query = cb.createTupleQuery();
+        // Читаем не заказы с позициями, а счётчики по магазинам и статусам, которые поддерживаются
+        // триггерами при записи, поэтому объём работы зависит от числа магазинов, а не позиций заказов
+        final var counter = query.from(StoreStatusCounter.class);
+        if (shard) {
+            // Диапазон с обеими границами включительно, по первичному ключу (store_id, status)
+            query.where(cb.between(
+                    counter.get(StoreStatusCounter_.STORE_ID),
+                    cb.parameter(UUID.class, FROM_STORE_ID),
+                    cb.parameter(UUID.class, TO_STORE_ID)
+            ));
+        }
+        // Вынесем выражение суммы счётчика с нужным статусом в отдельный метод,
+        // а выражения количества с каждым статусом вынесем в отдельную переменную,
+        // так как они понадобятся в нескольких местах
+        final var completedCount = sumOrderCountByStatus(cb, counter, Order.Status.COMPLETED);
+        final var canceledCount = sumOrderCountByStatus(cb, counter, Order.Status.CANCELED);
+        final var rejectedCount = sumOrderCountByStatus(cb, counter, Order.Status.REJECTED);
+        // Общая стоимость заказов магазина уже посчитана в счётчиках по каждому статусу
+        final var totalOrderPrice = cb.sum(counter.<BigDecimal>get(StoreStatusCounter_.TOTAL_PRICE));
+
+        final var selections = new ArrayList<Selection<?>>(List.of(
+                // Для каждого столбца указываем явно тип и псевдоним,
+                // чтобы по нему потом достать значение из кортежа
+                counter.get(StoreStatusCounter_.STORE_ID).as(UUID.class).alias("storeId"),
+                completedCount.as(Long.class).alias("completed"),
+                canceledCount.as(Long.class).alias("canceled"),
+                rejectedCount.as(Long.class).alias("rejected")
+        ));
+        final var score = weighted ? weightedScore(cb, completedCount, canceledCount, rejectedCount) : null;
+        if (weighted) {
+            selections.add(score.alias("score"));
+        }
+
+        query.multiselect(selections)
+                .groupBy(counter.get(StoreStatusCounter_.STORE_ID))
+                .having(
+                        cb.and(
+                                // Счётчики магазина, у которого не осталось заказов, обнуляются, но не удаляются
+                                cb.greaterThan(cb.sum(counter.get(StoreStatusCounter_.ORDER_COUNT)), 0L),
+                                cb.greaterThan(
+                                        totalOrderPrice,
+                                        cb.parameter(BigDecimal.class, LOWER_BOUND)
+                                ),
+                                cb.lessThan(
+                                        totalOrderPrice,
+                                        cb.parameter(BigDecimal.class, UPPER_BOUND)
+                                )
+                        )
+                );
+        if (weighted) {
+            // С LIMIT postgres сортирует не все магазины, а держит в куче только первые limit (top-N heapsort)
+            query.orderBy(cb.desc(score), cb.asc(counter.get(StoreStatusCounter_.STORE_ID)));
+        } else {
+            // Сортируем магазины по убыванию количества завершённых заказов
+            query.orderBy(cb.desc(cb.sum(cb.sum(completedCount, canceledCount), rejectedCount)));
+        }
+
+        return query;
+    }
+
+    static JpaCriteriaQuery<OrderShortInfoProjection> createOrderWithProductInCategoriesQuery(
+            HibernateCriteriaBuilder cb
+    ) {
+        final var query = cb.createQuery(OrderShortInfoProjection.class);
+        final var order = query.from(Order.class);
+        final var orderItem = order.join(Order_.ITEMS);
+        final var product = orderItem.join(OrderItem_.PRODUCT);
+        final var category = product.join(Product_.CATEGORY);
+        // Список имён передаётся одним параметром-массивом: с IN (?, ?, ...) число
+        // параметров зависело бы от длины списка, и план запроса не кэшировался бы
+        final var categoryNames = cb.parameter(String[].class, CATEGORY_NAMES);
+
+        // Кандидаты - заказы, в которых есть хотя бы один товар из категорий. Их находим по индексам
+        // product(category_id) и order_item(product_id), а не группировкой всех заказов.
+        // Заказ, все товары которого из этих категорий, обязательно есть среди кандидатов
+        final var candidateOrderIds = query.subquery(UUID.class);
+        final var candidateOrderItem = candidateOrderIds.from(OrderItem.class);
+        final var candidateCategory = candidateOrderItem.join(OrderItem_.PRODUCT).join(Product_.CATEGORY);
+        candidateOrderIds
+                .select(candidateOrderItem.get(OrderItem_.ORDER).get(Order_.ID))
+                .where(cb.isTrue(equalsAny(cb, candidateCategory.get(Category_.NAME), categoryNames)));
+
+        query
+                .select(cb.construct(
+                        OrderShortInfoProjection.class,
+                        order.get(Order_.ID),
+                        order.get(Order_.STORE_ID),
+                        order.get(Order_.STATUS)
+                ))
+                .where(order.get(Order_.ID).in(candidateOrderIds))
+                // В postgres можно обращаться к любому столбцу таблицы, сгруппированной по PK.
+                // Ключ секционирования created_at входит в первичный ключ order
+                .groupBy(order.get(Order_.ID), order.get(Order_.CREATED_AT))
+                .having(cb.function(
+                        // Указываем название, тип возвращаемого значения и аргументы
+                        JpaConfig.BOOL_AND,
+                        Boolean.class,
+                        equalsAny(cb, category.get(Category_.NAME), categoryNames)
+                ));
+
+        return query;
+    }
+
+    static JpaCriteriaQuery<OrderShortInfoProjection> createOrdersByOrdinalsQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createQuery(OrderShortInfoProjection.class);
+        final var order = query.from(Order.class);
+
+        return query
+                .select(cb.construct(
+                        OrderShortInfoProjection.class,
+                        order.get(Order_.ID),
+                        order.get(Order_.STORE_ID),
+                        order.get(Order_.STATUS)
+                ))
+                // ordinal = any(?) по индексу order(ordinal) в каждой партиции. Номера передаются
+                // одним параметром-массивом, поэтому текст запроса не зависит от их количества
+                .where(cb.isTrue(equalsAny(cb, order.get(Order_.ORDINAL), cb.parameter(Integer[].class, ORDINALS))));
+    }
+
+    static JpaCriteriaQuery<OrderWithTotalPriceProjection> createOrderWithProductCategoryQuery(
+            HibernateCriteriaBuilder cb
+    ) {
+        final var query = cb.createQuery(OrderWithTotalPriceProjection.class);
+
+        // Подзапрос id заказов, в которых есть товар из найденных категорий.
+        // product.category.id - это столбец product.category_id, JOIN с category не нужен
+        final var categoryOrderIds = query.subquery(UUID.class);
+        final var categoryOrderItem = categoryOrderIds.from(OrderItem.class);
+        final var categoryProduct = categoryOrderItem.join(OrderItem_.PRODUCT);
+        categoryOrderIds
+                .select(categoryOrderItem.get(OrderItem_.ORDER).get(Order_.ID))
+                .where(cb.isTrue(equalsAny(
+                        cb,
+                        categoryProduct.get(Product_.CATEGORY).get(Category_.ID),
+                        cb.parameter(UUID[].class, CATEGORY_IDS)
+                )));
+
+        final var order = query.from(Order.class);
+
+        query
+                .select(cb.construct(
+                        OrderWithTotalPriceProjection.class,
+                        // Пример использования составного Selection с помощью вложенного cb.construct
+                        cb.construct(
+                                OrderShortInfoProjection.class,
+                                order.get(Order_.ID),
+                                order.get(Order_.STORE_ID),
+                                order.get(Order_.STATUS)
+                        ),
+                        // Стоимость уже посчитана в заказе, поэтому ни JOIN с позициями, ни группировка не нужны
+                        order.get(Order_.TOTAL_AMOUNT)
+                ))
+                .where(order.get(Order_.ID).in(categoryOrderIds));
+
+        return query;
+    }
+
+    static JpaCriteriaQuery<OrderDayStatisticProjection> createOrderDayStatisticQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createQuery(OrderDayStatisticProjection.class);
+
+        // Выручка по дням уже посчитана в daily_order_revenue, поэтому вместо CTE с группировкой
+        // всех заказов читаем только дни из диапазона (по первичному ключу (day, slot) daily_order_revenue)
+        final var dayOrder = query.from(DailyOrderRevenue.class);
+        // Порядок сортировки результата вынесем в отдельную переменную
+        final var sortingOrder = cb.desc(dayOrder.get(DailyOrderRevenue_.DAY));
+
+        query
+                .select(cb.construct(
+                        OrderDayStatisticProjection.class,
+                        dayOrder.get(DailyOrderRevenue_.DAY),
+                        dayOrder.get(DailyOrderRevenue_.TOTAL_AMOUNT),
+                        cb.prod(
+                                // Это деление в CriteriaBuilder
+                                cb.quot(
+                                        dayOrder.get(DailyOrderRevenue_.TOTAL_AMOUNT),
+                                        // Оконные функции вычисляются после WHERE, поэтому,
+                                        // как и раньше, учитывают только дни из диапазона
+                                        cb.windowFunction(
+                                                "sum",
+                                                BigDecimal.class,
+                                                cb.createWindow(),
+                                                dayOrder.get(DailyOrderRevenue_.TOTAL_AMOUNT)
+                                        )
+                                ),
+                                cb.literal(100)
+                        ),
+                        cb.diff(
+                                dayOrder.get(DailyOrderRevenue_.TOTAL_AMOUNT),
+                                // Оконная функция lead возвращает значение из следующей
+                                // строки партиции (в данном случае партиция одна,
+                                // отсортированная по убыванию времени)
+                                cb.windowFunction(
+                                        "lead",
+                                        BigDecimal.class,
+                                        cb.createWindow()
+                                                .orderBy(sortingOrder),
+                                        dayOrder.get(DailyOrderRevenue_.TOTAL_AMOUNT)
+                                )
+                        )
+                ))
+                .where(cb.between(
+                        dayOrder.get(DailyOrderRevenue_.DAY),
+                        cb.parameter(LocalDate.class, START_DATE),
+                        cb.parameter(LocalDate.class, END_DATE)
+                ))
+                .orderBy(sortingOrder);
+
+        return query;
+    }
+
+    // Все позиции всех заказов без сортировки: выгрузка читается потоком, и сортировка всей истории
+    // заказов в БД только задержала бы первую строку
+    static JpaCriteriaQuery<OrderExportProjection> createOrderExportQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createQuery(OrderExportProjection.class);
+        final var orderItem = query.from(OrderItem.class);
+        final var order = orderItem.join(OrderItem_.ORDER, JoinType.INNER);
+        final var product = orderItem.join(OrderItem_.PRODUCT, JoinType.INNER);
+
+        return query.select(cb.construct(
+                OrderExportProjection.class,
+                order.get(Order_.ID),
+                order.get(Order_.STORE_ID),
+                order.get(Order_.CUSTOMER_ID),
+                order.get(Order_.STATUS),
+                order.get(Order_.CREATED_AT),
+                order.get(Order_.FINISHED_AT),
+                product.get(Product_.ID),
+                // id категории берётся из столбца product.category_id, без JOIN с category
+                product.get(Product_.CATEGORY).get(Category_.ID),
+                orderItem.get(OrderItem_.QUANTITY),
+                // Цена на момент покупки
+                orderItem.get(OrderItem_.PRICE)
+        ));
+    }
+
+    static JpaCriteriaQuery<OrderRevenueBucketProjection> createOrderRevenueRollupQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createQuery(OrderRevenueBucketProjection.class);
+        final var rollup = query.from(OrderRevenueRollup.class);
+
+        query
+                .select(cb.construct(
+                        OrderRevenueBucketProjection.class,
+                        rollup.get(OrderRevenueRollup_.BUCKET),
+                        rollup.get(OrderRevenueRollup_.KEY),
+                        rollup.get(OrderRevenueRollup_.TOTAL_AMOUNT),
+                        rollup.get(OrderRevenueRollup_.ITEM_COUNT)
+                ))
+                // Полуинтервал [fromBucket, toBucket) одного уровня и разреза - диапазон первичного ключа
+                .where(
+                        cb.equal(
+                                rollup.get(OrderRevenueRollup_.GRANULARITY),
+                                cb.parameter(OrderRevenueGranularity.class, GRANULARITY)
+                        ),
+                        cb.equal(
+                                rollup.get(OrderRevenueRollup_.BREAKDOWN),
+                                cb.parameter(OrderRevenueBreakdown.class, BREAKDOWN)
+                        ),
+                        cb.greaterThanOrEqualTo(
+                                rollup.get(OrderRevenueRollup_.BUCKET),
+                                cb.parameter(OffsetDateTime.class, FROM_BUCKET)
+                        ),
+                        cb.lessThan(
+                                rollup.get(OrderRevenueRollup_.BUCKET),
+                                cb.parameter(OffsetDateTime.class, TO_BUCKET)
+                        )
+                )
+                .orderBy(cb.asc(rollup.get(OrderRevenueRollup_.BUCKET)), cb.asc(rollup.get(OrderRevenueRollup_.KEY)));
+
+        return query;
+    }
+
+    // Условие value = any(values). cb.arrayContains в postgres превращается в values @> array[value],
+    // а для такого условия не подходит B-tree индекс по value
+    static <T> Expression<Boolean> equalsAny(
+            HibernateCriteriaBuilder cb,
+            Expression<T> value,
+            Expression<T[]> values
+    ) {
+        return cb.function(JpaConfig.EQUALS_ANY, Boolean.class, value, values);
+    }
+
+    // Взвешенная сумма количеств заказов магазина, веса передаются параметрами. Веса double, а не BigDecimal:
+    // параметр BigDecimal в арифметике Hibernate приводит к numeric с точностью первого переданного значения
+    // и кэширует этот SQL, так что следующие значения округлялись бы до неё
+    private static Expression<Double> weightedScore(
+            HibernateCriteriaBuilder cb,
+            Expression<Long> completedCount,
+            Expression<Long> canceledCount,
+            Expression<Long> rejectedCount
+    ) {
+        return cb.sum(
+                cb.sum(
+                        cb.prod(completedCount, cb.parameter(Double.class, COMPLETED_WEIGHT)),
+                        cb.prod(canceledCount, cb.parameter(Double.class, CANCELED_WEIGHT))
+                ),
+                cb.prod(rejectedCount, cb.parameter(Double.class, REJECTED_WEIGHT))
+        ).as(Double.class);
+    }
+
+    private static Expression<Long> sumOrderCountByStatus(
+            HibernateCriteriaBuilder cb,
+            Root<StoreStatusCounter> counter,
+            Order.Status status
+    ) {
+        // Так записываем SUM(CASE WHEN counter.status = status THEN counter.order_count ELSE 0 END)
+        return cb.sum(
+                cb.<Long>selectCase()
+                        .when(
+                                cb.equal(counter.get(StoreStatusCounter_.STATUS), cb.literal(status)),
+                                counter.get(StoreStatusCounter_.ORDER_COUNT)
+                        )
+                        .otherwise(0L)
+        );
+    }
+}
@@ -0,0 +1,218 @@
+package ru.denis5726.criteriaarticle.repository.impl;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.denis5726.criteriaarticle.config.properties.StoreStatisticProperties;
+import ru.denis5726.criteriaarticle.metrics.QueryMetrics;
+import ru.denis5726.criteriaarticle.model.StoreStatisticWeights;
+import ru.denis5726.criteriaarticle.repository.query.PreparedCriteriaQuery;
+import ru.denis5726.criteriaarticle.repository.query.QueryCancellation;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.UnaryOperator;
+
+// Статистика магазинов по диапазонам id магазинов. Диапазоны считаются одновременно, каждый в своей
+// read-only транзакции на своём соединении, затем отсортированные результаты диапазонов сливаются.
+// Магазин целиком попадает в один диапазон, поэтому суммировать между диапазонами ничего не нужно.
+// Диапазоны читают разные снимки БД: запись, зафиксированная между их запросами, может попасть
+// в одни диапазоны и не попасть в другие.
+// Диапазоны выполняются с statement_timeout вызывающей транзакции; ошибка одного диапазона или прерывание
+// вызывающего потока отменяет запросы остальных в postgres
+@Component
+class StoreStatisticShards {
+    // Порядок запроса storeStatisticShard: по убыванию суммы завершённых, отменённых и отклонённых заказов
+    static final Comparator<Tuple> ORDER = Comparator.comparingLong(StoreStatisticShards::total).reversed();
+    // Порядок запроса topStoreStatisticShard: по убыванию score, затем по id магазина так, как сравнивает postgres
+    static final Comparator<Tuple> WEIGHTED_ORDER = Comparator
+            .comparing((Tuple tuple) -> tuple.get("score", Double.class), Comparator.reverseOrder())
+            .thenComparing(tuple -> tuple.get("storeId", UUID.class), StoreStatisticShards::compareUnsigned);
+
+    private final EntityManager entityManager;
+    private final OrderQueries queries;
+    private final QueryMetrics queryMetrics;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    // Свой пул: его размер ограничивает число соединений, занятых диапазонами всех запросов вместе
+    private final ThreadPoolTaskExecutor executor;
+    private final List<UUID[]> ranges;
+
+    StoreStatisticShards(
+            EntityManager entityManager,
+            OrderQueries queries,
+            QueryMetrics queryMetrics,
+            TransactionTemplate readOnlyTransactionTemplate,
+            StoreStatisticProperties properties,
+            ThreadPoolTaskExecutorBuilder executorBuilder
+    ) {
+        this.entityManager = entityManager;
+        this.queries = queries;
+        this.queryMetrics = queryMetrics;
+        this.readOnlyTransactionTemplate = readOnlyTransactionTemplate;
+        this.executor = executorBuilder
+                .corePoolSize(properties.getParallelism())
+                .maxPoolSize(properties.getParallelism())
+                .threadNamePrefix("store-statistic-")
+                .build();
+        this.executor.initialize();
+        this.ranges = split(properties.getShards());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    List<Tuple> findStoreStatistic(BigDecimal lowerBound, BigDecimal upperBound) {
+        return execute(
+                "findStoreStatisticShard",
+                queries.getStoreStatisticShard(),
+                query -> query
+                        .setParameter(OrderQueries.LOWER_BOUND, lowerBound)
+                        .setParameter(OrderQueries.UPPER_BOUND, upperBound),
+                ORDER,
+                Integer.MAX_VALUE
+        );
+    }
+
+    // Каждый диапазон отдаёт не больше limit строк, слияние останавливается на limit-й строке
+    List<Tuple> findTopStoreStatistic(
+            BigDecimal lowerBound,
+            BigDecimal upperBound,
+            StoreStatisticWeights weights,
+            int limit
+    ) {
+        return execute(
+                "findTopStoreStatisticShard",
+                queries.getTopStoreStatisticShard(),
+                query -> query
+                        .setParameter(OrderQueries.LOWER_BOUND, lowerBound)
+                        .setParameter(OrderQueries.UPPER_BOUND, upperBound)
+                        .setParameter(OrderQueries.COMPLETED_WEIGHT, weights.getCompleted())
+                        .setParameter(OrderQueries.CANCELED_WEIGHT, weights.getCanceled())
+                        .setParameter(OrderQueries.REJECTED_WEIGHT, weights.getRejected())
+                        .setMaxResults(limit),
+                WEIGHTED_ORDER,
+                limit
+        );
+    }
+
+    private List<Tuple> execute(
+            String queryName,
+            PreparedCriteriaQuery<Tuple> preparedQuery,
+            UnaryOperator<TypedQuery<Tuple>> binder,
+            Comparator<Tuple> order,
+            int limit
+    ) {
+        final var statementTimeout = TransactionSynchronizationManager.isActualTransactionActive()
+                ? QueryCancellation.getStatementTimeout(entityManager)
+                : null;
+        final var cancellation = new QueryCancellation("Store statistic query");
+        final var futures = ranges.stream()
+                .map(range -> CompletableFuture.supplyAsync(
+                        () -> readOnlyTransactionTemplate.execute(status -> {
+                            final var session = cancellation.attach(entityManager);
+                            try {
+                                if (statementTimeout != null) {
+                                    QueryCancellation.setStatementTimeout(session, statementTimeout);
+                                }
+                                return queryMetrics.list(
+                                        queryName,
+                                        binder.apply(preparedQuery.createQuery(session)
+                                                .setParameter(OrderQueries.FROM_STORE_ID, range[0])
+                                                .setParameter(OrderQueries.TO_STORE_ID, range[1]))
+                                );
+                            } finally {
+                                cancellation.detach(session);
+                            }
+                        }),
+                        executor
+                ))
+                .toList();
+        final var results = new ArrayList<List<Tuple>>(futures.size());
+        try {
+            for (final var future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            cancel(cancellation, futures);
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            // Вызывающий поток прерван, например, при отмене задания QueryJobService
+            cancel(cancellation, futures);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Store statistic query was interrupted");
+        }
+        return merge(results, order, limit);
+    }
+
+    // Результат уже не нужен: диапазоны в очереди пула не запускаются, выполняющиеся прерываются
+    private static void cancel(QueryCancellation cancellation, List<CompletableFuture<List<Tuple>>> futures) {
+        cancellation.cancel();
+        futures.forEach(future -> future.cancel(false));
+    }
+
+    // Слияние k отсортированных списков через очередь из текущих голов списков
+    static List<Tuple> merge(List<List<Tuple>> results, Comparator<Tuple> order, int limit) {
+        record Head(Tuple tuple, int list, int index) {
+        }
+        final var heads = new PriorityQueue<Head>(Math.max(results.size(), 1), Comparator.comparing(Head::tuple, order));
+        var size = 0;
+        for (var i = 0; i < results.size(); i++) {
+            size += results.get(i).size();
+            if (!results.get(i).isEmpty()) {
+                heads.add(new Head(results.get(i).getFirst(), i, 0));
+            }
+        }
+        final var merged = new ArrayList<Tuple>(Math.min(size, limit));
+        while (!heads.isEmpty() && merged.size() < limit) {
+            final var head = heads.poll();
+            merged.add(head.tuple());
+            final var list = results.get(head.list());
+            if (head.index() + 1 < list.size()) {
+                heads.add(new Head(list.get(head.index() + 1), head.list(), head.index() + 1));
+            }
+        }
+        return merged;
+    }
+
+    // Равные диапазоны старших 64 бит id. postgres сравнивает uuid побайтно без знака,
+    // поэтому границы делятся как беззнаковые числа, а границы диапазона включаются в него
+    static List<UUID[]> split(int shards) {
+        final var step = Long.divideUnsigned(-1L, shards);
+        final var ranges = new ArrayList<UUID[]>(shards);
+        for (var i = 0; i < shards; i++) {
+            final var from = new UUID(i * step, 0L);
+            final var to = i == shards - 1 ? new UUID(-1L, -1L) : new UUID((i + 1) * step - 1, -1L);
+            ranges.add(new UUID[]{from, to});
+        }
+        return ranges;
+    }
+
+    private static int compareUnsigned(UUID left, UUID right) {
+        final var result = Long.compareUnsigned(left.getMostSignificantBits(), right.getMostSignificantBits());
+        return result != 0
+                ? result
+                : Long.compareUnsigned(left.getLeastSignificantBits(), right.getLeastSignificantBits());
+    }
+
+    private static long total(Tuple tuple) {
+        return tuple.get("completed", Long.class) + tuple.get("canceled", Long.class) + tuple.get("rejected", Long.class);
+    }
+}
@@ -0,0 +1,30 @@
+package ru.denis5726.criteriaarticle.repository.query;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+import org.hibernate.query.criteria.JpaCriteriaQuery;
+
+// Criteria-запрос, который строится один раз, а значения получает через именованные параметры (cb.parameter).
+// Дерево запроса не копируется при создании Query (hibernate.criteria.copy_tree=false),
+// а его перевод в SQL кэшируется в кэше планов Hibernate, ключом которого служит само дерево.
+// Поэтому на каждый вызов остаются только привязка параметров и маппинг результата.
+// Дерево используется одновременно из разных потоков, после создания его нельзя изменять
+public final class PreparedCriteriaQuery<T> {
+    private final JpaCriteriaQuery<T> criteria;
+
+    public PreparedCriteriaQuery(JpaCriteriaQuery<T> criteria) {
+        this.criteria = criteria;
+    }
+
+    public TypedQuery<T> createQuery(EntityManager entityManager) {
+        return entityManager.createQuery(criteria)
+                // Для criteria-запросов кэш планов по умолчанию выключен: дерево, построенное заново
+                // на каждый запрос, никогда не совпадёт с закэшированным и только заняло бы место в кэше
+                .setHint(HibernateHints.HINT_QUERY_PLAN_CACHEABLE, true);
+    }
+
+    public JpaCriteriaQuery<T> getCriteria() {
+        return criteria;
+    }
+}
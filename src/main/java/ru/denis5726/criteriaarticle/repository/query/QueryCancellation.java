@@ -0,0 +1,91 @@
+package ru.denis5726.criteriaarticle.repository.query;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Отмена из другого потока запросов, выполняющихся в сессиях транзакций: cancel() прерывает выполняющуюся
+// команду JDBC каждой подключённой сессии через Statement.cancel.
+// Флаг отмены проверяется после публикации сессии (attach), а cancel() читает сессии после установки флага,
+// поэтому отмена не теряется, даже если пришла до начала запроса
+@Slf4j
+public class QueryCancellation {
+    // SQLSTATE query_canceled: запрос прерван по statement_timeout или через Statement.cancel
+    private static final String QUERY_CANCELED = "57014";
+
+    private final String description;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private volatile boolean cancelled;
+
+    // description - что отменяется, для сообщений и журнала
+    public QueryCancellation(String description) {
+        this.description = description;
+    }
+
+    // Сама сессия текущей транзакции, а не прокси общего EntityManager: прокси в потоке отмены
+    // обращается к другой сессии. CancellationException, если отмена уже запрошена
+    public Session attach(EntityManager entityManager) {
+        final var session = entityManager.unwrap(SessionImplementor.class);
+        sessions.add(session);
+        if (cancelled) {
+            throw new CancellationException(description + " was cancelled");
+        }
+        return session;
+    }
+
+    public void detach(Session session) {
+        sessions.remove(session);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        for (final var session : sessions) {
+            try {
+                session.cancelQuery();
+            } catch (RuntimeException e) {
+                log.debug("Could not cancel query of {}", description, e);
+            }
+        }
+    }
+
+    // statement_timeout до конца текущей транзакции (set_config с третьим аргументом true - как set local).
+    // Значение в формате postgres, например 5000ms
+    public static void setStatementTimeout(EntityManager entityManager, String timeout) {
+        entityManager.createNativeQuery("select set_config('statement_timeout', :timeout, true)", String.class)
+                .setParameter("timeout", timeout)
+                .getSingleResult();
+    }
+
+    public static void setStatementTimeout(EntityManager entityManager, Duration timeout) {
+        setStatementTimeout(entityManager, timeout.toMillis() + "ms");
+    }
+
+    // statement_timeout текущей транзакции, null - без ограничения
+    public static String getStatementTimeout(EntityManager entityManager) {
+        final var timeout = (String) entityManager
+                .createNativeQuery("select current_setting('statement_timeout')", String.class)
+                .getSingleResult();
+        return "0".equals(timeout) ? null : timeout;
+    }
+
+    // Запрос прерван по statement_timeout или через Statement.cancel
+    public static boolean isQueryCanceled(Throwable e) {
+        for (var cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && QUERY_CANCELED.equals(sqlException.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,278 @@
+package ru.denis5726.criteriaarticle.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import ru.denis5726.criteriaarticle.config.JpaConfig;
+import ru.denis5726.criteriaarticle.config.properties.OrderIngestionProperties;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.entity.OrderItem;
+import ru.denis5726.criteriaarticle.entity.OrderStatusHistory;
+import ru.denis5726.criteriaarticle.entity.Product;
+import ru.denis5726.criteriaarticle.entity.Product_;
+import ru.denis5726.criteriaarticle.event.OrderDataChangedEvent;
+import ru.denis5726.criteriaarticle.model.OrderIngestionMode;
+import ru.denis5726.criteriaarticle.model.OrderIngestionRequest;
+import ru.denis5726.criteriaarticle.model.OrderIngestionResult;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Массовая загрузка заказов с позициями и историей статусов. Вся пачка записывается в одной транзакции.
+// Агрегаты (store_status_counter, daily_order_revenue) в обоих режимах обновляют триггеры уровня команды,
+// поэтому загрузка не требует последующей сверки
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OrderIngestionService {
+    private final EntityManager entityManager;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OrderIngestionProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    public OrderIngestionResult ingest(List<OrderIngestionRequest> orders, OrderIngestionMode mode) {
+        validate(orders);
+        final var startedAt = System.nanoTime();
+        // Транзакция фиксируется до замера, чтобы время включало и проверку ограничений при фиксации
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            final var prices = loadProductPrices(orders);
+            switch (mode) {
+                case BATCH -> insertEntities(orders, prices);
+                case COPY -> copyRows(orders, prices);
+            }
+        });
+        final var nanos = System.nanoTime() - startedAt;
+
+        final var itemCount = orders.stream().mapToInt(order -> order.getItems().size()).sum();
+        final var historyRecordCount = orders.stream().mapToInt(order -> order.getHistory().size()).sum();
+        final var rows = orders.size() + itemCount + historyRecordCount;
+        final var seconds = Math.max(nanos, 1) / 1e9;
+        final var result = new OrderIngestionResult(
+                mode,
+                orders.size(),
+                itemCount,
+                historyRecordCount,
+                TimeUnit.NANOSECONDS.toMillis(nanos),
+                Math.round(orders.size() / seconds),
+                Math.round(rows / seconds)
+        );
+        Timer.builder("order.ingestion")
+                .description("Order batch ingestion time")
+                .tag("mode", mode.name())
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        meterRegistry.counter("order.ingestion.rows", "mode", mode.name()).increment(rows);
+        log.info("Ingested {} orders ({} rows) with {} in {} ms, {} rows/s",
+                result.getOrderCount(), rows, mode, result.getDurationMillis(), result.getRowsPerSecond());
+        return result;
+    }
+
+    private void validate(List<OrderIngestionRequest> orders) {
+        if (orders == null || orders.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch is empty");
+        }
+        if (orders.size() > properties.getMaxOrders()) {
+            throw new ResponseStatusException(
+                    HttpStatus.PAYLOAD_TOO_LARGE,
+                    "Batch contains " + orders.size() + " orders, at most " + properties.getMaxOrders() + " allowed"
+            );
+        }
+        for (int i = 0; i < orders.size(); i++) {
+            final var order = orders.get(i);
+            if (order.getStoreId() == null || order.getCustomerId() == null || order.getStatus() == null) {
+                throw invalidOrder(i, "storeId, customerId and status are required");
+            }
+            if (order.getItems() == null) {
+                order.setItems(List.of());
+            }
+            if (order.getHistory() == null) {
+                order.setHistory(List.of());
+            }
+            final var productIds = new HashSet<UUID>();
+            for (final var item : order.getItems()) {
+                if (item.getProductId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                    throw invalidOrder(i, "items must have productId and positive quantity");
+                }
+                // Товары в заказе уникальны (order_item_uq_order_id_product_id)
+                if (!productIds.add(item.getProductId())) {
+                    throw invalidOrder(i, "product " + item.getProductId() + " occurs more than once");
+                }
+            }
+            if (order.getHistory().contains(null)) {
+                throw invalidOrder(i, "history must not contain null statuses");
+            }
+        }
+    }
+
+    // Текущие цены товаров пачки, которые станут ценами покупки в позициях. Один запрос на всю пачку
+    // заодно проверяет, что товары существуют, вместо ошибки внешнего ключа посреди загрузки
+    private Map<UUID, BigDecimal> loadProductPrices(List<OrderIngestionRequest> orders) {
+        final var productIds = new HashSet<UUID>();
+        orders.forEach(order -> order.getItems().forEach(item -> productIds.add(item.getProductId())));
+        final var prices = new HashMap<UUID, BigDecimal>();
+        if (productIds.isEmpty()) {
+            return prices;
+        }
+        final var cb = entityManager.unwrap(Session.class).getCriteriaBuilder();
+        final var query = cb.createTupleQuery();
+        final var product = query.from(Product.class);
+        // Массив вместо IN: количество товаров в пачке не ограничено числом параметров JDBC.
+        // id = any(?), а не arrayContains: иначе товары ищутся не по первичному ключу, а перебором всей таблицы
+        final var ids = cb.parameter(UUID[].class, "ids");
+        query.multiselect(product.get(Product_.ID), product.get(Product_.PRICE))
+                .where(cb.isTrue(cb.function(JpaConfig.EQUALS_ANY, Boolean.class, product.get(Product_.ID), ids)));
+        entityManager.createQuery(query)
+                .setParameter(ids, productIds.toArray(UUID[]::new))
+                .getResultList()
+                .forEach(row -> prices.put(row.get(0, UUID.class), row.get(1, BigDecimal.class)));
+        productIds.removeAll(prices.keySet());
+        if (!productIds.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown products: " + productIds);
+        }
+        return prices;
+    }
+
+    // Сущности сбрасываются в БД каждые flushEvery заказов. При hibernate.order_inserts INSERT группируются
+    // по таблицам и уходят пакетами, а очистка контекста не даёт ему расти вместе с размером пачки.
+    // UUID генерируются на стороне приложения, поэтому INSERT не ждут значения ключа из БД
+    private void insertEntities(List<OrderIngestionRequest> orders, Map<UUID, BigDecimal> prices) {
+        for (int i = 0; i < orders.size(); i++) {
+            final var request = orders.get(i);
+            final var order = Order.builder()
+                    .storeId(request.getStoreId())
+                    .customerId(request.getCustomerId())
+                    .status(request.getStatus())
+                    .finishedAt(request.getFinishedAt())
+                    .build();
+            entityManager.persist(order);
+            for (final var status : request.getHistory()) {
+                entityManager.persist(OrderStatusHistory.builder()
+                        .order(order)
+                        .status(status)
+                        .build());
+            }
+            for (final var item : request.getItems()) {
+                entityManager.persist(OrderItem.builder()
+                        .order(order)
+                        // Ссылка без загрузки товара, существование проверено заранее
+                        .product(entityManager.getReference(Product.class, item.getProductId()))
+                        .quantity(item.getQuantity())
+                        .price(prices.get(item.getProductId()))
+                        .build());
+            }
+            if ((i + 1) % properties.getFlushEvery() == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    // Строки передаются в COPY напрямую, минуя сущности и JPA-слушатели,
+    // поэтому об изменении данных сообщаем одним событием на всю пачку
+    private void copyRows(List<OrderIngestionRequest> orders, Map<UUID, BigDecimal> prices) {
+        final var createdAt = Instant.now();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            final var copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            final var orderIds = new UUID[orders.size()];
+            // Заказы копируются первыми: триггер позиций обновляет стоимость заказа
+            try (var rows = new CopyRows(copyManager,
+                    "copy \"order\" (id, status, store_id, customer_id, finished_at, created_at) from stdin")) {
+                for (int i = 0; i < orders.size(); i++) {
+                    final var order = orders.get(i);
+                    orderIds[i] = UUID.randomUUID();
+                    rows.row(orderIds[i], order.getStatus(), order.getStoreId(), order.getCustomerId(),
+                            order.getFinishedAt() == null ? null : order.getFinishedAt().toOffsetDateTime(),
+                            createdAt);
+                }
+            }
+            try (var rows = new CopyRows(copyManager,
+                    "copy order_status_history (id, order_id, status, created_at) from stdin")) {
+                for (int i = 0; i < orders.size(); i++) {
+                    for (final var status : orders.get(i).getHistory()) {
+                        rows.row(UUID.randomUUID(), orderIds[i], status, createdAt);
+                    }
+                }
+            }
+            try (var rows = new CopyRows(copyManager,
+                    "copy order_item (id, order_id, product_id, quantity, price) from stdin")) {
+                for (int i = 0; i < orders.size(); i++) {
+                    for (final var item : orders.get(i).getItems()) {
+                        rows.row(UUID.randomUUID(), orderIds[i], item.getProductId(), item.getQuantity(),
+                                prices.get(item.getProductId()));
+                    }
+                }
+            }
+        });
+        eventPublisher.publishEvent(new OrderDataChangedEvent(null));
+    }
+
+    private static ResponseStatusException invalidOrder(int index, String reason) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "Order #" + index + ": " + reason);
+    }
+
+    // Строки в текстовом формате COPY, отправляемые порциями по copyBufferSize символов.
+    // Значения (UUID, статусы, числа и время) не содержат табуляций и переводов строк,
+    // поэтому экранирование не требуется
+    private class CopyRows implements AutoCloseable {
+        private final CopyIn copyIn;
+        private final StringBuilder buffer = new StringBuilder();
+
+        CopyRows(CopyManager copyManager, String sql) throws SQLException {
+            this.copyIn = copyManager.copyIn(sql);
+        }
+
+        void row(Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    buffer.append('\t');
+                }
+                buffer.append(values[i] == null ? "\\N" : values[i]);
+            }
+            buffer.append('\n');
+            if (buffer.length() >= properties.getCopyBufferSize()) {
+                send();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                send();
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+
+        private void send() throws SQLException {
+            final var bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package ru.denis5726.criteriaarticle.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import ru.denis5726.criteriaarticle.config.properties.OrderRevenueRollupProperties;
+import ru.denis5726.criteriaarticle.entity.OrderRevenueRollup;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBreakdown;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBucketProjection;
+import ru.denis5726.criteriaarticle.model.OrderRevenueGranularity;
+import ru.denis5726.criteriaarticle.repository.OrderRepository;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+// Ряд выручки по интервалам из order_revenue_rollup. Каждый интервал собирается из самого крупного
+// хранимого уровня, который в него укладывается: месяцы в зоне app.rollup.time-zone - из месяцев
+// (неполные месяцы на краях диапазона - из дней), дни и недели - из дней, всё остальное
+// (часы и интервалы в других зонах) - из часов
+@Service
+public class OrderRevenueSeriesService {
+    private static final Comparator<UUID> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private final OrderRepository repository;
+    private final OrderRevenueRollupProperties properties;
+    private final ZoneId rollupTimeZone;
+
+    public OrderRevenueSeriesService(
+            OrderRepository repository,
+            OrderRevenueRollupProperties properties,
+            @Value("${app.rollup.time-zone}") ZoneId rollupTimeZone
+    ) {
+        this.repository = repository;
+        this.properties = properties;
+        this.rollupTimeZone = rollupTimeZone;
+    }
+
+    // Интервалы, начинающиеся с startDate по endDate включительно в зоне timeZone (null - app.rollup.time-zone).
+    // ResponseStatusException 400, если ряд нужно собирать из часов, а диапазон длиннее max-hour-range
+    // или смещение зоны не кратно часу
+    public List<OrderRevenueBucketProjection> findSeries(
+            OrderRevenueGranularity granularity,
+            OrderRevenueBreakdown breakdown,
+            LocalDate startDate,
+            LocalDate endDate,
+            ZoneId requestTimeZone
+    ) {
+        final var timeZone = requestTimeZone == null ? rollupTimeZone : requestTimeZone;
+        if (endDate.isBefore(startDate)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "endDate is before startDate");
+        }
+        final var from = startDate.atStartOfDay(timeZone).toInstant();
+        final var to = endDate.plusDays(1).atStartOfDay(timeZone).toInstant();
+        final var rows = new ArrayList<OrderRevenueBucketProjection>();
+        if (granularity != OrderRevenueGranularity.HOUR && timeZone.getRules().equals(rollupTimeZone.getRules())) {
+            // Дни и месяцы уровней совпадают с днями и месяцами запроса
+            if (granularity == OrderRevenueGranularity.MONTH) {
+                final var firstMonth = startDate.getDayOfMonth() == 1
+                        ? startDate
+                        : startDate.with(TemporalAdjusters.firstDayOfNextMonth());
+                final var endMonth = endDate.plusDays(1).withDayOfMonth(1);
+                if (firstMonth.isBefore(endMonth)) {
+                    final var monthsFrom = firstMonth.atStartOfDay(timeZone).toInstant();
+                    final var monthsTo = endMonth.atStartOfDay(timeZone).toInstant();
+                    read(rows, OrderRevenueGranularity.DAY, breakdown, from, monthsFrom);
+                    read(rows, OrderRevenueGranularity.MONTH, breakdown, monthsFrom, monthsTo);
+                    read(rows, OrderRevenueGranularity.DAY, breakdown, monthsTo, to);
+                    return rebucket(rows, granularity, breakdown, timeZone);
+                }
+            }
+            read(rows, OrderRevenueGranularity.DAY, breakdown, from, to);
+        } else {
+            if (Duration.between(from, to).compareTo(properties.getMaxHourRange()) > 0) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "Series built from hours must not be longer than " + properties.getMaxHourRange()
+                );
+            }
+            if (!hasWholeHourOffsets(timeZone, from, to)) {
+                throw new ResponseStatusException(
+                        HttpStatus.BAD_REQUEST,
+                        "Time zone offset must be a whole number of hours"
+                );
+            }
+            read(rows, OrderRevenueGranularity.HOUR, breakdown, from, to);
+        }
+        return rebucket(rows, granularity, breakdown, timeZone);
+    }
+
+    private void read(
+            List<OrderRevenueBucketProjection> rows,
+            OrderRevenueGranularity level,
+            OrderRevenueBreakdown breakdown,
+            Instant from,
+            Instant to
+    ) {
+        if (from.isBefore(to)) {
+            rows.addAll(repository.findOrderRevenueRollup(
+                    level,
+                    breakdown,
+                    from.atOffset(ZoneOffset.UTC),
+                    to.atOffset(ZoneOffset.UTC)
+            ));
+        }
+    }
+
+    // Суммирует строки уровня по интервалам запроса
+    private static List<OrderRevenueBucketProjection> rebucket(
+            List<OrderRevenueBucketProjection> rows,
+            OrderRevenueGranularity granularity,
+            OrderRevenueBreakdown breakdown,
+            ZoneId timeZone
+    ) {
+        final var buckets = new TreeMap<ZonedDateTime, Map<UUID, OrderRevenueBucketProjection>>();
+        for (final var row : rows) {
+            final var start = bucketStart(row.getBucket().atZoneSameInstant(timeZone), granularity);
+            final var key = breakdown == OrderRevenueBreakdown.TOTAL || OrderRevenueRollup.TOTAL_KEY.equals(row.getKey())
+                    ? null
+                    : row.getKey();
+            buckets.computeIfAbsent(start, ignored -> new TreeMap<>(KEY_ORDER)).merge(
+                    key,
+                    new OrderRevenueBucketProjection(start.toOffsetDateTime(), key, row.getTotalAmount(), row.getItemCount()),
+                    (existing, added) -> {
+                        existing.setTotalAmount(existing.getTotalAmount().add(added.getTotalAmount()));
+                        existing.setItemCount(existing.getItemCount() + added.getItemCount());
+                        return existing;
+                    }
+            );
+        }
+        final var series = new ArrayList<OrderRevenueBucketProjection>(rows.size());
+        buckets.values().forEach(keys -> series.addAll(keys.values()));
+        return series;
+    }
+
+    private static ZonedDateTime bucketStart(ZonedDateTime time, OrderRevenueGranularity granularity) {
+        return switch (granularity) {
+            case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+            case DAY -> time.toLocalDate().atStartOfDay(time.getZone());
+            case WEEK -> time.toLocalDate()
+                    .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                    .atStartOfDay(time.getZone());
+            case MONTH -> time.toLocalDate().withDayOfMonth(1).atStartOfDay(time.getZone());
+        };
+    }
+
+    // Час UTC целиком попадает в один час зоны, только если все её смещения в диапазоне кратны часу
+    private static boolean hasWholeHourOffsets(ZoneId timeZone, Instant from, Instant to) {
+        final var rules = timeZone.getRules();
+        if (rules.getOffset(from).getTotalSeconds() % 3600 != 0) {
+            return false;
+        }
+        for (var transition = rules.nextTransition(from);
+             transition != null && transition.getInstant().isBefore(to);
+             transition = rules.nextTransition(transition.getInstant())) {
+            if (transition.getOffsetAfter().getTotalSeconds() % 3600 != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
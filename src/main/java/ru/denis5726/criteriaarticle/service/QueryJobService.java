@@ -0,0 +1,304 @@
+package ru.denis5726.criteriaarticle.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import ru.denis5726.criteriaarticle.config.properties.QueryJobProperties;
+import ru.denis5726.criteriaarticle.model.QueryJobState;
+import ru.denis5726.criteriaarticle.model.QueryJobStatus;
+import ru.denis5726.criteriaarticle.model.QueryJobType;
+import ru.denis5726.criteriaarticle.repository.query.QueryCancellation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Асинхронное выполнение долгих аналитических запросов. Задание выполняется в своём пуле потоков
+// в read-only транзакции с statement_timeout, отмена прерывает запрос в postgres через Statement.cancel.
+// Пока задание в работе или хранится его результат (result-ttl), повторная отправка с теми же типом
+// и параметрами возвращает это же задание, а не запускает запрос заново.
+// Метрика query.job - время выполнения заданий с тегами type и state
+@Slf4j
+@Service
+public class QueryJobService {
+    private final EntityManager entityManager;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final QueryJobProperties properties;
+    private final MeterRegistry meterRegistry;
+    // Свой пул, а не applicationTaskExecutor: размер пула ограничивает число соединений, занятых заданиями
+    private final ThreadPoolTaskExecutor executor;
+    // Задания в очереди и в работе
+    private final Map<UUID, Job> activeJobs = new ConcurrentHashMap<>();
+    // Завершённые задания вместе с результатами
+    private final Cache<UUID, Job> finishedJobs;
+    // Задания для повторных отправок. Неудачные и отменённые задания отсюда удаляются сразу
+    private final Map<JobKey, Job> jobsByKey = new ConcurrentHashMap<>();
+
+    public QueryJobService(
+            EntityManager entityManager,
+            TransactionTemplate readOnlyTransactionTemplate,
+            QueryJobProperties properties,
+            MeterRegistry meterRegistry,
+            ThreadPoolTaskExecutorBuilder executorBuilder
+    ) {
+        this.entityManager = entityManager;
+        this.readOnlyTransactionTemplate = readOnlyTransactionTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.executor = executorBuilder
+                .corePoolSize(properties.getMaxConcurrent())
+                .maxPoolSize(properties.getMaxConcurrent())
+                .queueCapacity(properties.getQueueCapacity())
+                .threadNamePrefix("query-job-")
+                .build();
+        this.executor.initialize();
+        this.finishedJobs = Caffeine.newBuilder()
+                .expireAfterWrite(properties.getResultTtl())
+                // Вес задания - количество строк результата, как и в кэшах OrderRepository
+                .maximumWeight(properties.getMaxResultWeight())
+                .<UUID, Job>weigher((id, job) -> Math.max(1, job.rowCount()))
+                .removalListener((id, job, cause) -> {
+                    if (job != null) {
+                        jobsByKey.remove(job.key, job);
+                    }
+                })
+                .build();
+    }
+
+    public QueryJobStatus submit(QueryJobType type, Map<String, Object> parameters, Supplier<List<?>> query) {
+        final var key = new JobKey(type, parameters);
+        final var submitted = new Job(key);
+        final var job = jobsByKey.computeIfAbsent(key, k -> submitted);
+        if (job != submitted) {
+            return job.status();
+        }
+        activeJobs.put(job.id, job);
+        try {
+            job.task = executor.submit(() -> run(job, query));
+        } catch (TaskRejectedException e) {
+            activeJobs.remove(job.id);
+            jobsByKey.remove(key, job);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many query jobs in the queue", e);
+        }
+        return job.status();
+    }
+
+    public QueryJobStatus getStatus(UUID id) {
+        return find(id).status();
+    }
+
+    // Статус после завершения задания или по истечении wait, если задание ещё не завершено
+    public CompletableFuture<QueryJobStatus> awaitFinished(UUID id, Duration wait) {
+        final var job = find(id);
+        final var timeout = Math.clamp(wait.toMillis(), 0, properties.getMaxWait().toMillis());
+        // Копия, чтобы таймаут одного ожидающего не завершил общий future задания
+        return job.finished.copy()
+                .completeOnTimeout(job, timeout, TimeUnit.MILLISECONDS)
+                .thenApply(Job::status);
+    }
+
+    public List<?> getResult(UUID id) {
+        final var job = find(id);
+        final var status = job.status();
+        if (status.getState() != QueryJobState.COMPLETED) {
+            throw new ResponseStatusException(
+                    HttpStatus.CONFLICT,
+                    "Query job " + id + " is " + status.getState() + ", result is not available"
+            );
+        }
+        return job.result;
+    }
+
+    public QueryJobStatus cancel(UUID id) {
+        final var job = find(id);
+        if (job.cancel()) {
+            // Задание было в очереди, запрос не выполнялся
+            finish(job);
+        }
+        return job.status();
+    }
+
+    // Данные заказов изменились: новые отправки должны выполнить запрос заново.
+    // Сами задания остаются доступны по id до истечения result-ttl
+    public void invalidateResults() {
+        jobsByKey.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        activeJobs.values().forEach(Job::cancel);
+        executor.shutdown();
+    }
+
+    private Job find(UUID id) {
+        var job = activeJobs.get(id);
+        if (job == null) {
+            job = finishedJobs.getIfPresent(id);
+        }
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Query job " + id + " not found");
+        }
+        return job;
+    }
+
+    private void run(Job job, Supplier<List<?>> query) {
+        if (!job.start()) {
+            return;
+        }
+        try {
+            job.complete(readOnlyTransactionTemplate.execute(status -> {
+                final var session = job.cancellation.attach(entityManager);
+                try {
+                    if (!properties.getStatementTimeout().isZero()) {
+                        QueryCancellation.setStatementTimeout(session, properties.getStatementTimeout());
+                    }
+                    return query.get();
+                } finally {
+                    job.cancellation.detach(session);
+                }
+            }));
+        } catch (RuntimeException e) {
+            job.fail(e);
+        }
+        finish(job);
+    }
+
+    private void finish(Job job) {
+        final var status = job.status();
+        activeJobs.remove(job.id);
+        if (status.getState() != QueryJobState.COMPLETED) {
+            jobsByKey.remove(job.key, job);
+        }
+        finishedJobs.put(job.id, job);
+        job.finished.complete(job);
+        if (status.getStartedAt() != null) {
+            final var duration = Duration.between(status.getStartedAt(), status.getFinishedAt());
+            Timer.builder("query.job")
+                    .description("Analytical query job execution time")
+                    .tag("type", status.getType().name())
+                    .tag("state", status.getState().name())
+                    .register(meterRegistry)
+                    .record(duration);
+            log.info("Query job {} {} {} in {} ms, parameters {}",
+                    job.id, status.getType(), status.getState(), duration.toMillis(), status.getParameters());
+        }
+    }
+
+    private record JobKey(QueryJobType type, Map<String, Object> parameters) {
+    }
+
+    private static class Job {
+        private final UUID id = UUID.randomUUID();
+        private final JobKey key;
+        private final Instant submittedAt = Instant.now();
+        private final CompletableFuture<Job> finished = new CompletableFuture<>();
+        // Отмена запроса задания в его сессии
+        private final QueryCancellation cancellation;
+        private QueryJobState state = QueryJobState.QUEUED;
+        private Instant startedAt;
+        private Instant finishedAt;
+        private volatile List<?> result;
+        private String error;
+        private volatile Future<?> task;
+
+        Job(JobKey key) {
+            this.key = key;
+            this.cancellation = new QueryCancellation("Query job " + id);
+        }
+
+        synchronized boolean start() {
+            if (state != QueryJobState.QUEUED) {
+                return false;
+            }
+            state = QueryJobState.RUNNING;
+            startedAt = Instant.now();
+            return true;
+        }
+
+        // true, если задание было в очереди и отменено сразу
+        boolean cancel() {
+            // Флаг отмены ставится до проверки состояния: complete() и fail() его видят
+            cancellation.cancel();
+            synchronized (this) {
+                if (state == QueryJobState.QUEUED) {
+                    state = QueryJobState.CANCELLED;
+                    finishedAt = Instant.now();
+                    final var queued = task;
+                    if (queued != null) {
+                        queued.cancel(false);
+                    }
+                    return true;
+                }
+            }
+            // Прерывание потока задания: запрос может выполняться не в сессии задания,
+            // а на других соединениях, пока поток задания ждёт их (StoreStatisticShards)
+            final var running = task;
+            if (running != null) {
+                running.cancel(true);
+            }
+            return false;
+        }
+
+        synchronized void complete(List<?> rows) {
+            finishedAt = Instant.now();
+            // Запрос успел завершиться до отмены, но результат уже никому не нужен
+            if (cancellation.isCancelled()) {
+                state = QueryJobState.CANCELLED;
+                return;
+            }
+            state = QueryJobState.COMPLETED;
+            result = rows;
+        }
+
+        synchronized void fail(RuntimeException e) {
+            finishedAt = Instant.now();
+            if (cancellation.isCancelled()) {
+                state = QueryJobState.CANCELLED;
+            } else if (QueryCancellation.isQueryCanceled(e)) {
+                state = QueryJobState.TIMED_OUT;
+                error = "Query exceeded statement timeout";
+            } else {
+                state = QueryJobState.FAILED;
+                error = e.getMessage();
+                log.warn("Query job {} failed", id, e);
+            }
+        }
+
+        int rowCount() {
+            final var rows = result;
+            return rows == null ? 0 : rows.size();
+        }
+
+        synchronized QueryJobStatus status() {
+            return new QueryJobStatus(
+                    id,
+                    key.type(),
+                    key.parameters(),
+                    state,
+                    submittedAt,
+                    startedAt,
+                    finishedAt,
+                    result == null ? null : result.size(),
+                    error
+            );
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.denis5726.criteriaarticle.web;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Ограничение числа одновременно выполняемых запросов к эндпоинту, см. BulkheadInterceptor.
+// Эндпоинты с одинаковым названием делят одно ограничение
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Bulkhead {
+    String value();
+}
@@ -0,0 +1,122 @@
+package ru.denis5726.criteriaarticle.web;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import ru.denis5726.criteriaarticle.config.properties.BulkheadProperties;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Ограничивает число одновременных запросов к эндпоинтам с @Bulkhead, чтобы тяжёлые аналитические запросы
+// не занимали все соединения пула и не задерживали лёгкие. Место занимается до открытия транзакции
+// контроллера и освобождается после завершения запроса, для потоковых ответов - после записи всего тела.
+// Метрики с тегом bulkhead: bulkhead.active, bulkhead.waiting, bulkhead.wait, bulkhead.rejected
+@Component
+@RequiredArgsConstructor
+public class BulkheadInterceptor implements AsyncHandlerInterceptor {
+    private static final String PERMIT_ATTRIBUTE = BulkheadInterceptor.class.getName() + ".permit";
+
+    private final BulkheadProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, EndpointBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+        // При асинхронной обработке preHandle вызывается повторно, место уже занято первым вызовом
+        if (!properties.isEnabled()
+                || !(handler instanceof HandlerMethod handlerMethod)
+                || request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+        final var annotation = handlerMethod.getMethodAnnotation(Bulkhead.class);
+        if (annotation == null) {
+            return true;
+        }
+        final var bulkhead = bulkheads.computeIfAbsent(annotation.value(), this::createBulkhead);
+        if (!bulkhead.acquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            throw new ResponseStatusException(
+                    HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many concurrent requests to " + annotation.value()
+            );
+        }
+        request.setAttribute(PERMIT_ATTRIBUTE, bulkhead);
+        return true;
+    }
+
+    // afterConcurrentHandlingStarted не переопределяется: при асинхронной обработке место
+    // остаётся занятым до afterCompletion, который вызывается после асинхронной части
+    @Override
+    public void afterCompletion(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            Object handler,
+            Exception ex
+    ) {
+        if (request.getAttribute(PERMIT_ATTRIBUTE) instanceof EndpointBulkhead bulkhead) {
+            request.removeAttribute(PERMIT_ATTRIBUTE);
+            bulkhead.release();
+        }
+    }
+
+    private EndpointBulkhead createBulkhead(String name) {
+        final var limit = properties.getLimit(name);
+        // Справедливый семафор: ожидающие запросы получают место в порядке очереди
+        final var semaphore = new Semaphore(limit.getMaxConcurrent(), true);
+        Gauge.builder("bulkhead.active", semaphore, s -> limit.getMaxConcurrent() - s.availablePermits())
+                .description("Requests currently holding a bulkhead permit")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+        Gauge.builder("bulkhead.waiting", semaphore, Semaphore::getQueueLength)
+                .description("Requests waiting for a bulkhead permit")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+        return new EndpointBulkhead(
+                semaphore,
+                limit.getMaxWait(),
+                Timer.builder("bulkhead.wait")
+                        .description("Time spent waiting for a bulkhead permit")
+                        .tag("bulkhead", name)
+                        .register(meterRegistry),
+                Counter.builder("bulkhead.rejected")
+                        .description("Requests rejected because the bulkhead was full")
+                        .tag("bulkhead", name)
+                        .register(meterRegistry)
+        );
+    }
+
+    private record EndpointBulkhead(Semaphore semaphore, Duration maxWait, Timer waitTimer, Counter rejected) {
+
+        boolean acquire() throws InterruptedException {
+            final var startedAt = System.nanoTime();
+            final var acquired = maxWait.isZero()
+                    ? semaphore.tryAcquire()
+                    : semaphore.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            if (acquired) {
+                waitTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            } else {
+                rejected.increment();
+            }
+            return acquired;
+        }
+
+        void release() {
+            semaphore.release();
+        }
+    }
+}
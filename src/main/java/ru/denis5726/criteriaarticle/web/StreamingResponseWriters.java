@@ -0,0 +1,73 @@
+package ru.denis5726.criteriaarticle.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+// Генераторы для потоковых ответов, в которые строки пишутся значениями по одному, без промежуточных объектов
+// и без сериализации через рефлексию. Форматы: NDJSON (по умолчанию) и последовательность значений CBOR
+// (application/cbor-seq, RFC 8742), если клиент явно запросил CBOR в Accept.
+// Генераторы создаются из ObjectMapper приложения, поэтому даты записываются так же, как в обычных ответах
+@Component
+public class StreamingResponseWriters {
+    public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    public static final MediaType APPLICATION_CBOR_SEQ = MediaType.parseMediaType("application/cbor-seq");
+
+    private static final SerializedString LINE_SEPARATOR = new SerializedString("\n");
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+
+    public StreamingResponseWriters(ObjectMapper objectMapper) {
+        this.jsonMapper = objectMapper;
+        this.cborMapper = objectMapper.copyWith(new CBORFactory());
+    }
+
+    // Первый из поддерживаемых типов в порядке перечисления в Accept
+    public MediaType negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return APPLICATION_NDJSON;
+        }
+        for (final var mediaType : MediaType.parseMediaTypes(accept)) {
+            if (mediaType.equalsTypeAndSubtype(APPLICATION_CBOR_SEQ)
+                    || mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_CBOR)) {
+                return APPLICATION_CBOR_SEQ;
+            }
+            if (mediaType.equalsTypeAndSubtype(APPLICATION_NDJSON)
+                    || mediaType.equalsTypeAndSubtype(MediaType.APPLICATION_JSON)) {
+                return APPLICATION_NDJSON;
+            }
+        }
+        return APPLICATION_NDJSON;
+    }
+
+    public JsonGenerator createGenerator(OutputStream outputStream, MediaType mediaType) throws IOException {
+        if (APPLICATION_CBOR_SEQ.equals(mediaType)) {
+            return cborMapper.createGenerator(outputStream);
+        }
+        final var generator = jsonMapper.createGenerator(outputStream);
+        generator.setRootValueSeparator(LINE_SEPARATOR);
+        return generator;
+    }
+
+    // В CBOR UUID записывается 16 байтами, как его пишет и читает Jackson для двоичных форматов
+    public static void writeUuidField(JsonGenerator generator, String name, UUID uuid) throws IOException {
+        generator.writeFieldName(name);
+        if (generator.canWriteBinaryNatively()) {
+            generator.writeBinary(ByteBuffer.allocate(16)
+                    .putLong(uuid.getMostSignificantBits())
+                    .putLong(uuid.getLeastSignificantBits())
+                    .array());
+        } else {
+            generator.writeString(uuid.toString());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ru.denis5726.criteriaarticle.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.denis5726.criteriaarticle.CriteriaArticleApplication;
+import ru.denis5726.criteriaarticle.generator.DataGenerator;
+import ru.denis5726.criteriaarticle.generator.DataGeneratorSettings;
+
+import javax.sql.DataSource;
+
+// Контекст приложения без веб-сервера, общий для всех бенчмарков в одном форке JMH
+public final class BenchmarkApplication {
+    // Сколько заказов должно быть в БД перед замером, недостающие генерируются (0 - использовать данные как есть)
+    private static final long ORDERS = Long.getLong("perf.orders", 0);
+
+    private static ConfigurableApplicationContext context;
+
+    private BenchmarkApplication() {
+    }
+
+    public static synchronized ConfigurableApplicationContext context() {
+        if (context == null) {
+            context = new SpringApplicationBuilder(CriteriaArticleApplication.class)
+                    .web(WebApplicationType.NONE)
+                    // Аргументы командной строки, а не properties(): значения по умолчанию перекрываются application.yaml.
+                    // Вывод SQL в консоль сам по себе заметно влияет на время выполнения запросов
+                    .run(
+                            "--spring.jpa.properties.hibernate.show_sql=false",
+                            "--spring.jpa.properties.hibernate.format_sql=false",
+                            "--logging.level.root=WARN"
+                    );
+            if (ORDERS > 0) {
+                final var dataSource = context.getBean(DataSource.class);
+                final var missing = ORDERS - DataGenerator.countOrders(dataSource);
+                if (missing > 0) {
+                    new DataGenerator(DataGeneratorSettings.fromSystemProperties().withOrders(missing))
+                            .generate(dataSource);
+                }
+            }
+        }
+        return context;
+    }
+
+    // JMH запускает каждый бенчмарк в отдельном форке, контекст закрывается по его окончании,
+    // иначе потоки планировщика не дают форку завершиться
+    public static synchronized void close() {
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+}
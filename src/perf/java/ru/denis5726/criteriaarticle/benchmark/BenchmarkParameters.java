@@ -0,0 +1,57 @@
+package ru.denis5726.criteriaarticle.benchmark;
+
+import jakarta.persistence.EntityManager;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+// Параметры запросов, подобранные по данным в БД так, чтобы запросы возвращали непустой результат
+public record BenchmarkParameters(
+        UUID storeId,
+        List<String> leafCategoryNames,
+        String rootCategoryName,
+        LocalDate startDate,
+        LocalDate endDate
+) {
+
+    @SuppressWarnings("unchecked")
+    public static BenchmarkParameters load(EntityManager entityManager) {
+        // Магазин с наибольшим количеством заказов, отправленных в магазин
+        final var storeId = (UUID) entityManager.createNativeQuery("""
+                        select o.store_id
+                        from "order" o
+                                 join order_status_history h on h.order_id = o.id
+                        where h.status = 'SENT_TO_STORE'
+                        group by o.store_id
+                        order by count(*) desc
+                        limit 1
+                        """)
+                .getSingleResult();
+        final var leafCategoryNames = (List<String>) entityManager.createNativeQuery("""
+                        select c.name
+                        from category c
+                        where not exists (select from category child where child.parent_id = c.id)
+                        order by c.name
+                        limit 2
+                        """)
+                .getResultList();
+        // Корневая категория с наибольшим количеством дочерних
+        final var rootCategoryName = (String) entityManager.createNativeQuery("""
+                        select c.name
+                        from category c
+                                 join category child on child.parent_id = c.id
+                        where c.parent_id is null
+                        group by c.id, c.name
+                        order by count(*) desc
+                        limit 1
+                        """)
+                .getSingleResult();
+        final var endDate = ((Date) entityManager.createNativeQuery("""
+                        select max(created_at)::date from "order"
+                        """)
+                .getSingleResult()).toLocalDate();
+        return new BenchmarkParameters(storeId, leafCategoryNames, rootCategoryName, endDate.minusDays(30), endDate);
+    }
+}
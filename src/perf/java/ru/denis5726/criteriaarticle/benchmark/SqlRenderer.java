@@ -0,0 +1,36 @@
+package ru.denis5726.criteriaarticle.benchmark;
+
+import jakarta.persistence.TypedQuery;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.sqm.internal.QuerySqmImpl;
+import org.hibernate.query.sqm.tree.select.SqmSelectStatement;
+
+// Перевод SQM-дерева запроса в SQL без выполнения, теми же средствами, что использует Hibernate при выполнении.
+// Нужен, чтобы отдельно замерить стоимость трансляции запроса
+public final class SqlRenderer {
+
+    private SqlRenderer() {
+    }
+
+    public static String render(TypedQuery<?> query) {
+        final var sqmQuery = query.unwrap(QuerySqmImpl.class);
+        final var session = (SessionImplementor) sqmQuery.getSession();
+        final var sessionFactory = session.getSessionFactory();
+        final var sqlAst = sessionFactory.getQueryEngine().getSqmTranslatorFactory()
+                .createSelectTranslator(
+                        (SqmSelectStatement<?>) sqmQuery.getSqmStatement(),
+                        sqmQuery.getQueryOptions(),
+                        sqmQuery.getDomainParameterXref(),
+                        sqmQuery.getQueryParameterBindings(),
+                        session.getLoadQueryInfluencers(),
+                        sessionFactory,
+                        true
+                )
+                .translate()
+                .getSqlAst();
+        return sessionFactory.getJdbcServices().getJdbcEnvironment().getSqlAstTranslatorFactory()
+                .buildSelectTranslator(sessionFactory, sqlAst)
+                .translate(null, sqmQuery.getQueryOptions())
+                .getSqlString();
+    }
+}
@@ -0,0 +1,357 @@
+package ru.denis5726.criteriaarticle.generator;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import ru.denis5726.criteriaarticle.benchmark.BenchmarkApplication;
+import ru.denis5726.criteriaarticle.entity.Order;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+// Генератор синтетических данных большого объёма для проверки планов запросов и нагрузочного тестирования.
+// Данные генерируются с перекосом, как в реальной системе: несколько горячих магазинов и популярных товаров,
+// глубокое дерево категорий, свежие заказы в промежуточных статусах, старые - в конечных.
+// Загрузка идёт через COPY пачками по batchSize заказов в одной транзакции.
+// Запуск: ./mvnw -Pperf test-compile exec:exec@generate -Dgenerator.args="-Dgenerator.orders=5000000"
+@Slf4j
+@RequiredArgsConstructor
+public class DataGenerator {
+    private static final Order.Status[] OPEN_STATUSES = {
+            Order.Status.NEW,
+            Order.Status.SENT_TO_STORE,
+            Order.Status.RECEIVED_IN_STORE,
+            Order.Status.IN_PROCESSING
+    };
+    private static final int PROGRESS_LOG_ORDERS = 200_000;
+
+    private final DataGeneratorSettings settings;
+
+    public static void main(String[] args) {
+        final var context = BenchmarkApplication.context();
+        try {
+            new DataGenerator(DataGeneratorSettings.fromSystemProperties()).generate(context.getBean(DataSource.class));
+        } finally {
+            BenchmarkApplication.close();
+        }
+    }
+
+    public static long countOrders(DataSource dataSource) {
+        try (var connection = dataSource.getConnection()) {
+            return countOrders(connection);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to count orders", e);
+        }
+    }
+
+    public void generate(DataSource dataSource) {
+        try (var connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                generate(connection);
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Failed to generate data", e);
+        }
+    }
+
+    private void generate(Connection connection) throws SQLException, IOException {
+        final var copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+        final var catalog = generateCatalog();
+        if (!exists(connection, catalog.categoryIds().getFirst())) {
+            log.warn("Loading {} categories and {} products", catalog.categoryIds().size(), settings.products());
+            copy(copyManager, "copy category (id, name, parent_id) from stdin", catalog.categoryRows());
+            copy(copyManager, "copy product (id, name, price, category_id) from stdin", catalog.productRows());
+        }
+
+        final var startedAt = System.nanoTime();
+        final var existingOrders = countOrders(connection);
+        // Партиции на все месяцы генерируемых дат, иначе заказы попали бы в партицию по умолчанию
+        for (final var table : List.of("order", "order_status_history")) {
+            execute(connection, "select create_monthly_partitions('%s', current_date - %d, current_date)"
+                    .formatted(table, settings.days()));
+        }
+        // Построчное обновление агрегатов триггерами на таком объёме дороже самой загрузки,
+        // поэтому триггеры отключаются, а агрегаты пересчитываются функциями сверки в конце.
+        // Всё выполняется в одной транзакции, при ошибке триггеры останутся включёнными
+        execute(connection, "alter table \"order\" disable trigger user");
+        execute(connection, "alter table order_item disable trigger user");
+        execute(connection, "alter table order_status_history disable trigger user");
+
+        final var random = new SplittableRandom(settings.seed() * 31 + existingOrders);
+        final var stores = new ZipfDistribution(settings.stores(), settings.storeSkew());
+        final var products = new ZipfDistribution(catalog.productIds().length, settings.productSkew());
+        final var now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        var rows = 0L;
+        for (long generated = 0; generated < settings.orders(); ) {
+            final var batch = (int) Math.min(settings.batchSize(), settings.orders() - generated);
+            final var orderRows = new StringBuilder();
+            final var itemRows = new StringBuilder();
+            final var historyRows = new StringBuilder();
+            for (int i = 0; i < batch; i++) {
+                rows += generateOrder(random, now, stores, products, catalog, orderRows, itemRows, historyRows);
+            }
+            copy(copyManager,
+                    "copy \"order\" (id, status, store_id, customer_id, finished_at, created_at) from stdin",
+                    orderRows);
+            copy(copyManager, "copy order_item (id, order_id, product_id, quantity, price) from stdin", itemRows);
+            copy(copyManager, "copy order_status_history (id, order_id, status, created_at) from stdin", historyRows);
+            final var previous = generated;
+            generated += batch;
+            if (generated / PROGRESS_LOG_ORDERS != previous / PROGRESS_LOG_ORDERS || generated == settings.orders()) {
+                final var seconds = (System.nanoTime() - startedAt) / 1e9;
+                log.warn("Loaded {} of {} orders ({} rows, {} rows/s)",
+                        generated, settings.orders(), rows, Math.round(rows / seconds));
+            }
+        }
+
+        execute(connection, "alter table \"order\" enable trigger user");
+        execute(connection, "alter table order_item enable trigger user");
+        execute(connection, "alter table order_status_history enable trigger user");
+        log.warn("Recalculating aggregates");
+        execute(connection, "select reconcile_store_status_counter()");
+        execute(connection, "select reconcile_daily_order_revenue()");
+        execute(connection, "select reconcile_order_revenue_rollup()");
+        execute(connection, "analyze");
+        log.warn("Generated {} orders in {} s", settings.orders(), Math.round((System.nanoTime() - startedAt) / 1e9));
+    }
+
+    // Возвращает количество строк, добавленных во все таблицы
+    private int generateOrder(
+            SplittableRandom random,
+            Instant now,
+            ZipfDistribution stores,
+            ZipfDistribution products,
+            Catalog catalog,
+            StringBuilder orderRows,
+            StringBuilder itemRows,
+            StringBuilder historyRows
+    ) {
+        final var orderId = randomUuid(random);
+        // Плотность заказов растёт к текущему моменту - магазин со временем получает больше заказов
+        final var ageSeconds = (long) (settings.days() * 86_400L * (1 - Math.sqrt(random.nextDouble())));
+        final var createdAt = now.minusSeconds(ageSeconds);
+        final var path = statusPath(random, ageSeconds / 86_400.0);
+        final var status = path.getLast();
+
+        var historyAt = createdAt;
+        for (int i = 0; i < path.size(); i++) {
+            if (i > 0) {
+                // Между сменами статусов в среднем 3 часа
+                final var gap = (long) (-Math.log(1 - random.nextDouble()) * 3 * 3_600);
+                historyAt = min(historyAt.plusSeconds(gap), now);
+            }
+            row(historyRows, randomUuid(random), orderId, path.get(i), historyAt);
+        }
+        final var finished = status == Order.Status.COMPLETED
+                || status == Order.Status.CANCELED
+                || status == Order.Status.REJECTED;
+        row(orderRows,
+                orderId,
+                status,
+                storeId(stores.sample(random)),
+                uuid("customer-" + random.nextInt(settings.customers())),
+                finished ? historyAt : null,
+                createdAt);
+
+        var items = 1;
+        while (items < settings.maxItemsPerOrder() && random.nextDouble() < 0.55) {
+            items++;
+        }
+        final var chosen = new int[items];
+        for (int i = 0; i < items; i++) {
+            // Товары в заказе уникальны (order_item_uq_order_id_product_id)
+            int product;
+            do {
+                product = products.sample(random);
+            } while (contains(chosen, i, product));
+            chosen[i] = product;
+            var quantity = 1;
+            while (quantity < 10 && random.nextDouble() < 0.35) {
+                quantity++;
+            }
+            row(itemRows, randomUuid(random), orderId, catalog.productIds()[product], quantity,
+                    catalog.productPrices()[product]);
+        }
+        return 1 + path.size() + items;
+    }
+
+    // Последовательность статусов заказа от NEW до текущего
+    private static List<Order.Status> statusPath(SplittableRandom random, double ageDays) {
+        // Незавершённые заказы в основном свежие, старые почти все в конечном статусе
+        final var openShare = 0.9 * Math.exp(-ageDays / 3) + 0.01;
+        final Order.Status status;
+        if (random.nextDouble() < openShare) {
+            status = OPEN_STATUSES[random.nextInt(OPEN_STATUSES.length)];
+        } else {
+            final var terminal = random.nextDouble();
+            status = terminal < 0.85 ? Order.Status.COMPLETED
+                    : terminal < 0.95 ? Order.Status.CANCELED
+                    : Order.Status.REJECTED;
+        }
+        return switch (status) {
+            case NEW -> List.of(Order.Status.NEW);
+            case SENT_TO_STORE -> List.of(Order.Status.NEW, Order.Status.SENT_TO_STORE);
+            case RECEIVED_IN_STORE ->
+                    List.of(Order.Status.NEW, Order.Status.SENT_TO_STORE, Order.Status.RECEIVED_IN_STORE);
+            case IN_PROCESSING -> List.of(
+                    Order.Status.NEW,
+                    Order.Status.SENT_TO_STORE,
+                    Order.Status.RECEIVED_IN_STORE,
+                    Order.Status.IN_PROCESSING
+            );
+            case COMPLETED -> List.of(
+                    Order.Status.NEW,
+                    Order.Status.SENT_TO_STORE,
+                    Order.Status.RECEIVED_IN_STORE,
+                    Order.Status.IN_PROCESSING,
+                    Order.Status.COMPLETED
+            );
+            case CANCELED -> random.nextBoolean()
+                    ? List.of(Order.Status.NEW, Order.Status.CANCELED)
+                    : List.of(Order.Status.NEW, Order.Status.SENT_TO_STORE, Order.Status.CANCELED);
+            case REJECTED -> List.of(Order.Status.NEW, Order.Status.SENT_TO_STORE, Order.Status.REJECTED);
+        };
+    }
+
+    // Каталог не зависит от количества заказов и генерируется из seed одинаково при каждом запуске,
+    // поэтому повторный запуск только добавляет заказы к уже загруженному каталогу
+    private Catalog generateCatalog() {
+        final var random = new SplittableRandom(settings.seed());
+        final var categoryIds = new ArrayList<UUID>();
+        final var leafIds = new ArrayList<UUID>();
+        final var categoryRows = new StringBuilder();
+        final var stack = new ArrayDeque<CategoryNode>();
+        for (int i = settings.categoryRoots(); i > 0; i--) {
+            stack.push(new CategoryNode(uuid("category-" + settings.seed() + "-" + i), null, "C" + i, 0));
+        }
+        while (!stack.isEmpty()) {
+            final var node = stack.pop();
+            categoryIds.add(node.id());
+            row(categoryRows, node.id(), node.name(), node.parentId());
+            // Часть ветвей обрывается раньше, поэтому листья находятся на разной глубине
+            final var children = node.level() + 1 >= settings.categoryDepth()
+                    || (node.level() > 0 && random.nextDouble() < 0.15)
+                    ? 0
+                    : 1 + random.nextInt(2 * settings.categoryFanout() - 1);
+            if (children == 0) {
+                leafIds.add(node.id());
+            }
+            for (int i = children; i > 0; i--) {
+                final var name = node.name() + "." + i;
+                stack.push(new CategoryNode(uuid("category-" + settings.seed() + "-" + name), node.id(), name,
+                        node.level() + 1));
+            }
+        }
+
+        final var productIds = new UUID[settings.products()];
+        final var productPrices = new BigDecimal[settings.products()];
+        final var productRows = new StringBuilder();
+        for (int i = 0; i < productIds.length; i++) {
+            productIds[i] = uuid("product-" + settings.seed() + "-" + i);
+            // Логнормальное распределение цен с медианой около 300
+            final var cents = Math.max(1, Math.round(Math.exp(Math.log(300) + random.nextGaussian()) * 100));
+            productPrices[i] = BigDecimal.valueOf(cents, 2);
+            row(productRows,
+                    productIds[i],
+                    "Product " + i,
+                    productPrices[i],
+                    leafIds.get(random.nextInt(leafIds.size())));
+        }
+        return new Catalog(categoryIds, categoryRows, productIds, productPrices, productRows);
+    }
+
+    private static UUID storeId(int store) {
+        return uuid("store-" + store);
+    }
+
+    private static UUID uuid(String name) {
+        return UUID.nameUUIDFromBytes(("generator:" + name).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // UUID версии 4 из детерминированного генератора, в отличие от UUID.randomUUID
+    private static UUID randomUuid(SplittableRandom random) {
+        return new UUID(
+                (random.nextLong() & ~0xF000L) | 0x4000L,
+                (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L
+        );
+    }
+
+    private static Instant min(Instant first, Instant second) {
+        return first.isBefore(second) ? first : second;
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Строка в текстовом формате COPY. Генерируемые значения не содержат табуляций и переводов строк,
+    // поэтому экранирование не требуется
+    private static void row(StringBuilder rows, Object... values) {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                rows.append('\t');
+            }
+            rows.append(values[i] == null ? "\\N" : values[i]);
+        }
+        rows.append('\n');
+    }
+
+    private static void copy(CopyManager copyManager, String sql, StringBuilder rows) throws SQLException, IOException {
+        if (!rows.isEmpty()) {
+            copyManager.copyIn(sql, new StringReader(rows.toString()));
+        }
+    }
+
+    private static boolean exists(Connection connection, UUID categoryId) throws SQLException {
+        try (var statement = connection.prepareStatement("select exists(select from category where id = ?)")) {
+            statement.setObject(1, categoryId);
+            final var resultSet = statement.executeQuery();
+            resultSet.next();
+            return resultSet.getBoolean(1);
+        }
+    }
+
+    private static long countOrders(Connection connection) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            final var resultSet = statement.executeQuery("select count(*) from \"order\"");
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private record CategoryNode(UUID id, UUID parentId, String name, int level) {
+    }
+
+    private record Catalog(List<UUID> categoryIds, StringBuilder categoryRows, UUID[] productIds,
+                           BigDecimal[] productPrices, StringBuilder productRows) {
+    }
+}
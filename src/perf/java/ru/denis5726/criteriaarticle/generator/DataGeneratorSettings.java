@@ -0,0 +1,55 @@
+package ru.denis5726.criteriaarticle.generator;
+
+// Параметры генерации. Значения по умолчанию дают объём, на котором уже видна разница между планами запросов,
+// каждое можно переопределить системным свойством generator.<имя>, например -Dgenerator.orders=5000000
+public record DataGeneratorSettings(
+        // Сколько заказов добавить к уже существующим
+        long orders,
+        int stores,
+        // Показатель распределения Ципфа для магазинов, чем больше - тем сильнее выделяются горячие магазины
+        double storeSkew,
+        int customers,
+        int categoryRoots,
+        int categoryDepth,
+        // Среднее количество дочерних категорий
+        int categoryFanout,
+        int products,
+        double productSkew,
+        int maxItemsPerOrder,
+        // Глубина истории заказов в днях
+        int days,
+        long seed,
+        // Сколько заказов загружается одной командой COPY
+        int batchSize
+) {
+
+    public static DataGeneratorSettings fromSystemProperties() {
+        return new DataGeneratorSettings(
+                Long.getLong("generator.orders", 1_000_000),
+                Integer.getInteger("generator.stores", 1_000),
+                doubleProperty("generator.storeSkew", 1.1),
+                Integer.getInteger("generator.customers", 200_000),
+                Integer.getInteger("generator.categoryRoots", 6),
+                Integer.getInteger("generator.categoryDepth", 6),
+                Integer.getInteger("generator.categoryFanout", 3),
+                Integer.getInteger("generator.products", 20_000),
+                doubleProperty("generator.productSkew", 0.9),
+                Integer.getInteger("generator.maxItemsPerOrder", 8),
+                Integer.getInteger("generator.days", 730),
+                Long.getLong("generator.seed", 42),
+                Integer.getInteger("generator.batchSize", 20_000)
+        );
+    }
+
+    public DataGeneratorSettings withOrders(long orders) {
+        return new DataGeneratorSettings(
+                orders, stores, storeSkew, customers, categoryRoots, categoryDepth, categoryFanout,
+                products, productSkew, maxItemsPerOrder, days, seed, batchSize
+        );
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        final var value = System.getProperty(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+}
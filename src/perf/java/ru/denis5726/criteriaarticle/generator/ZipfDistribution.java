@@ -0,0 +1,28 @@
+package ru.denis5726.criteriaarticle.generator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Распределение Ципфа на [0, size): элемент с номером k выбирается с весом 1 / (k + 1)^exponent.
+// Задаёт перекос данных - небольшое число "горячих" магазинов и товаров получает большую часть заказов
+public final class ZipfDistribution {
+    private final double[] cumulativeWeights;
+
+    public ZipfDistribution(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Distribution size must be positive");
+        }
+        cumulativeWeights = new double[size];
+        var total = 0.0;
+        for (int i = 0; i < size; i++) {
+            total += 1.0 / Math.pow(i + 1, exponent);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public int sample(SplittableRandom random) {
+        final var point = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        final var index = Arrays.binarySearch(cumulativeWeights, point);
+        return Math.min(index >= 0 ? index : -index - 1, cumulativeWeights.length - 1);
+    }
+}
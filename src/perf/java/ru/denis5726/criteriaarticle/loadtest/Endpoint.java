@@ -0,0 +1,77 @@
+package ru.denis5726.criteriaarticle.loadtest;
+
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+// Эндпоинты OrderController и способ выбора параметров запроса к каждому из них
+public enum Endpoint {
+    SENT_IN_STORE_ORDERS("sentInStoreOrders") {
+        @Override
+        String query(LoadTestParameters parameters, SplittableRandom random) {
+            return "storeId=" + parameters.randomStoreId(random);
+        }
+    },
+    STORE_STATISTIC("storeStatistic") {
+        @Override
+        String query(LoadTestParameters parameters, SplittableRandom random) {
+            // Десять вариантов границ, как у типовых отчётов, которые запрашиваются повторно
+            final var upperBound = parameters.maxStoreTotalPrice()
+                    .multiply(BigDecimal.valueOf(1 + random.nextInt(10)))
+                    .divideToIntegralValue(BigDecimal.TEN);
+            return "lowerBound=0&upperBound=" + upperBound.toPlainString();
+        }
+    },
+    ORDERS_WITH_PRODUCT_IN_CATEGORIES("ordersWithProductInCategories") {
+        @Override
+        String query(LoadTestParameters parameters, SplittableRandom random) {
+            return "categoryName=" + encode(parameters.randomLeafCategoryName(random))
+                    + "&categoryName=" + encode(parameters.randomLeafCategoryName(random));
+        }
+    },
+    ORDERS_WITH_PRODUCT_CATEGORY("ordersWithProductCategory") {
+        @Override
+        String query(LoadTestParameters parameters, SplittableRandom random) {
+            return "categoryName=" + encode(parameters.randomParentCategoryName(random));
+        }
+    },
+    ORDER_DAY_STATISTIC("orderDayStatistic") {
+        @Override
+        String query(LoadTestParameters parameters, SplittableRandom random) {
+            // Окно от недели до квартала, заканчивающееся в случайный день из имеющихся данных
+            final var days = parameters.lastDay().toEpochDay() - parameters.firstDay().toEpochDay();
+            final var endDate = parameters.lastDay().minusDays(days > 0 ? random.nextLong(days) : 0);
+            return "startDate=" + endDate.minusDays(7 + random.nextInt(84)) + "&endDate=" + endDate;
+        }
+    };
+
+    private final String path;
+
+    Endpoint(String path) {
+        this.path = path;
+    }
+
+    public String path() {
+        return path;
+    }
+
+    public String uri(String baseUrl, LoadTestParameters parameters, SplittableRandom random) {
+        return baseUrl + "/" + path + "?" + query(parameters, random);
+    }
+
+    abstract String query(LoadTestParameters parameters, SplittableRandom random);
+
+    public static Endpoint fromPath(String path) {
+        for (final var endpoint : values()) {
+            if (endpoint.path.equals(path)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint " + path);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
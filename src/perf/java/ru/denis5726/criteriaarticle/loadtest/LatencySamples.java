@@ -0,0 +1,49 @@
+package ru.denis5726.criteriaarticle.loadtest;
+
+import java.util.Arrays;
+
+// Замеры времени ответа одного эндпоинта в наносекундах. Каждый поток пишет в свой экземпляр,
+// в конце теста они объединяются, поэтому синхронизация не нужна
+final class LatencySamples {
+    private long[] values = new long[1024];
+    private int size;
+    private long errors;
+
+    void add(long nanos) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = nanos;
+    }
+
+    void addError() {
+        errors++;
+    }
+
+    void addAll(LatencySamples other) {
+        values = Arrays.copyOf(values, Math.max(values.length, size + other.size));
+        System.arraycopy(other.values, 0, values, size, other.size);
+        size += other.size;
+        errors += other.errors;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long errors() {
+        return errors;
+    }
+
+    // Перцентиль по методу ближайшего ранга, вызывается после сортировки
+    long percentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        return values[Math.max(0, (int) Math.ceil(percentile / 100 * size) - 1)];
+    }
+
+    void sort() {
+        Arrays.sort(values, 0, size);
+    }
+}
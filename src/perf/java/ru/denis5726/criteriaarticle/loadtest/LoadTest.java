@@ -0,0 +1,123 @@
+package ru.denis5726.criteriaarticle.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Нагрузочный тест эндпоинтов OrderController на запущенном приложении.
+// Каждый из concurrency потоков в замкнутом цикле отправляет запросы к случайному эндпоинту из списка,
+// ответы за время прогрева не учитываются. В конце выводятся p50/p99 и пропускная способность по эндпоинтам.
+// Запуск: ./mvnw -Pperf test-compile exec:exec@load-test -Dload-test.args="-Dloadtest.concurrency=64"
+public class LoadTest {
+    private final LoadTestSettings settings;
+    private final LoadTestParameters parameters;
+    private final HttpClient client;
+
+    public LoadTest(LoadTestSettings settings, LoadTestParameters parameters) {
+        this.settings = settings;
+        this.parameters = parameters;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final var settings = LoadTestSettings.fromSystemProperties();
+        final var result = new LoadTest(settings, LoadTestParameters.load(settings)).run();
+        print(settings, result);
+    }
+
+    public Map<Endpoint, LatencySamples> run() throws InterruptedException, ExecutionException {
+        final var startedAt = System.nanoTime();
+        final var measureFrom = startedAt + settings.warmup().toNanos();
+        final var measureUntil = measureFrom + settings.duration().toNanos();
+        final var seeds = new SplittableRandom(settings.seed());
+        final var workers = new ArrayList<Future<Map<Endpoint, LatencySamples>>>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.concurrency(); i++) {
+                final var random = seeds.split();
+                workers.add(executor.submit(() -> work(random, measureFrom, measureUntil)));
+            }
+            final var result = new EnumMap<Endpoint, LatencySamples>(Endpoint.class);
+            for (final var worker : workers) {
+                worker.get().forEach((endpoint, samples) ->
+                        result.computeIfAbsent(endpoint, key -> new LatencySamples()).addAll(samples));
+            }
+            result.values().forEach(LatencySamples::sort);
+            return result;
+        }
+    }
+
+    private Map<Endpoint, LatencySamples> work(SplittableRandom random, long measureFrom, long measureUntil) {
+        final var samples = new EnumMap<Endpoint, LatencySamples>(Endpoint.class);
+        final List<Endpoint> endpoints = settings.endpoints();
+        while (true) {
+            final var endpoint = endpoints.get(random.nextInt(endpoints.size()));
+            final var request = HttpRequest.newBuilder(URI.create(endpoint.uri(settings.baseUrl(), parameters, random)))
+                    .timeout(Duration.ofMinutes(1))
+                    .GET()
+                    .build();
+            final var sentAt = System.nanoTime();
+            if (sentAt >= measureUntil) {
+                return samples;
+            }
+            boolean success;
+            try {
+                // Тело ответа читается полностью, время включает передачу всего результата
+                success = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() / 100 == 2;
+            } catch (IOException e) {
+                success = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return samples;
+            }
+            final var receivedAt = System.nanoTime();
+            if (sentAt >= measureFrom) {
+                final var endpointSamples = samples.computeIfAbsent(endpoint, key -> new LatencySamples());
+                if (success) {
+                    endpointSamples.add(receivedAt - sentAt);
+                } else {
+                    endpointSamples.addError();
+                }
+            }
+        }
+    }
+
+    private static void print(LoadTestSettings settings, Map<Endpoint, LatencySamples> result) {
+        final var seconds = settings.duration().toNanos() / 1e9;
+        final var total = new LatencySamples();
+        System.out.printf("Concurrency %d, measured %s after %s warmup%n",
+                settings.concurrency(), settings.duration(), settings.warmup());
+        System.out.printf("%-32s %10s %8s %10s %10s %10s %10s%n",
+                "Endpoint", "Requests", "Errors", "Req/s", "p50, ms", "p99, ms", "Max, ms");
+        result.forEach((endpoint, samples) -> {
+            print(endpoint.path(), samples, seconds);
+            total.addAll(samples);
+        });
+        total.sort();
+        print("total", total, seconds);
+    }
+
+    private static void print(String name, LatencySamples samples, double seconds) {
+        System.out.printf("%-32s %10d %8d %10.1f %10.2f %10.2f %10.2f%n",
+                name,
+                samples.size(),
+                samples.errors(),
+                samples.size() / seconds,
+                samples.percentile(50) / 1e6,
+                samples.percentile(99) / 1e6,
+                samples.percentile(100) / 1e6);
+    }
+}
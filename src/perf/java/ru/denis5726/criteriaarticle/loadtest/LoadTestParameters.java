@@ -0,0 +1,107 @@
+package ru.denis5726.criteriaarticle.loadtest;
+
+import java.math.BigDecimal;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+// Значения параметров запросов, выбранные из данных в БД. Магазины выбираются пропорционально
+// количеству их заказов, поэтому нагрузка имеет тот же перекос, что и данные
+public record LoadTestParameters(
+        UUID[] storeIds,
+        long[] cumulativeStoreOrders,
+        BigDecimal maxStoreTotalPrice,
+        List<String> leafCategoryNames,
+        List<String> parentCategoryNames,
+        LocalDate firstDay,
+        LocalDate lastDay
+) {
+    private static final int STORES = 1_000;
+
+    public static LoadTestParameters load(LoadTestSettings settings) throws SQLException {
+        try (var connection = DriverManager.getConnection(
+                settings.jdbcUrl(),
+                settings.jdbcUser(),
+                settings.jdbcPassword()
+        ); var statement = connection.createStatement()) {
+            final var storeIds = new ArrayList<UUID>();
+            final var cumulativeStoreOrders = new long[STORES];
+            var total = 0L;
+            var resultSet = statement.executeQuery("""
+                    select store_id, sum(order_count)
+                    from store_status_counter
+                    group by store_id
+                    having sum(order_count) > 0
+                    order by 2 desc
+                    limit %d
+                    """.formatted(STORES));
+            while (resultSet.next()) {
+                total += resultSet.getLong(2);
+                cumulativeStoreOrders[storeIds.size()] = total;
+                storeIds.add(resultSet.getObject(1, UUID.class));
+            }
+
+            resultSet = statement.executeQuery("""
+                    select coalesce(max(total_price), 0)
+                    from (select sum(total_price) as total_price from store_status_counter group by store_id) s
+                    """);
+            resultSet.next();
+            final var maxStoreTotalPrice = resultSet.getBigDecimal(1);
+
+            resultSet = statement.executeQuery("""
+                    select c.name
+                    from category c
+                    where exists (select from product p where p.category_id = c.id)
+                    """);
+            final var leafCategoryNames = new ArrayList<String>();
+            while (resultSet.next()) {
+                leafCategoryNames.add(resultSet.getString(1));
+            }
+
+            resultSet = statement.executeQuery("""
+                    select c.name
+                    from category c
+                    where exists (select from category child where child.parent_id = c.id)
+                    """);
+            final var parentCategoryNames = new ArrayList<String>();
+            while (resultSet.next()) {
+                parentCategoryNames.add(resultSet.getString(1));
+            }
+
+            resultSet = statement.executeQuery("select min(day), max(day) from daily_order_revenue");
+            resultSet.next();
+            final var lastDay = resultSet.getObject(2, LocalDate.class);
+            if (storeIds.isEmpty() || leafCategoryNames.isEmpty() || parentCategoryNames.isEmpty() || lastDay == null) {
+                throw new IllegalStateException("Database has no orders, run the data generator first");
+            }
+            return new LoadTestParameters(
+                    storeIds.toArray(UUID[]::new),
+                    Arrays.copyOf(cumulativeStoreOrders, storeIds.size()),
+                    maxStoreTotalPrice,
+                    leafCategoryNames,
+                    parentCategoryNames,
+                    resultSet.getObject(1, LocalDate.class),
+                    lastDay
+            );
+        }
+    }
+
+    public UUID randomStoreId(SplittableRandom random) {
+        final var point = random.nextLong(cumulativeStoreOrders[cumulativeStoreOrders.length - 1]) + 1;
+        final var index = Arrays.binarySearch(cumulativeStoreOrders, point);
+        return storeIds[index >= 0 ? index : -index - 1];
+    }
+
+    public String randomLeafCategoryName(SplittableRandom random) {
+        return leafCategoryNames.get(random.nextInt(leafCategoryNames.size()));
+    }
+
+    public String randomParentCategoryName(SplittableRandom random) {
+        return parentCategoryNames.get(random.nextInt(parentCategoryNames.size()));
+    }
+}
@@ -0,0 +1,37 @@
+package ru.denis5726.criteriaarticle.loadtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+// Параметры нагрузочного теста, переопределяются системными свойствами loadtest.<имя>
+public record LoadTestSettings(
+        String baseUrl,
+        int concurrency,
+        Duration warmup,
+        Duration duration,
+        List<Endpoint> endpoints,
+        // Подключение к БД нужно только для выбора параметров запросов из реальных данных
+        String jdbcUrl,
+        String jdbcUser,
+        String jdbcPassword,
+        long seed
+) {
+
+    public static LoadTestSettings fromSystemProperties() {
+        final var endpoints = System.getProperty("loadtest.endpoints");
+        return new LoadTestSettings(
+                System.getProperty("loadtest.baseUrl", "http://localhost:8080"),
+                Integer.getInteger("loadtest.concurrency", 16),
+                Duration.parse(System.getProperty("loadtest.warmup", "PT10S")),
+                Duration.parse(System.getProperty("loadtest.duration", "PT60S")),
+                endpoints == null
+                        ? List.of(Endpoint.values())
+                        : Arrays.stream(endpoints.split(",")).map(String::trim).map(Endpoint::fromPath).toList(),
+                System.getProperty("loadtest.jdbcUrl", "jdbc:postgresql://localhost:5432/criteriaarticle"),
+                System.getProperty("loadtest.jdbcUser", "postgres"),
+                System.getProperty("loadtest.jdbcPassword", "postgres"),
+                Long.getLong("loadtest.seed", 42)
+        );
+    }
+}
@@ -0,0 +1,137 @@
+package ru.denis5726.criteriaarticle.repository.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.criteria.JpaCriteriaQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.denis5726.criteriaarticle.benchmark.BenchmarkApplication;
+import ru.denis5726.criteriaarticle.benchmark.BenchmarkParameters;
+import ru.denis5726.criteriaarticle.benchmark.SqlRenderer;
+import ru.denis5726.criteriaarticle.index.CategoryTreeIndex;
+import ru.denis5726.criteriaarticle.repository.query.PreparedCriteriaQuery;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// Стоимость этапов выполнения каждого запроса OrderRepositoryImpl:
+// build - построение CriteriaQuery, translate - перевод SQM в SQL,
+// prepare - создание Query из заранее построенного запроса с привязкой параметров,
+// execute - выполнение заранее построенного запроса (план берётся из кэша),
+// executeAdHoc - построение и выполнение нового дерева на каждый вызов, как было до OrderQueries.
+// Бенчмарк лежит в пакете репозитория, чтобы вызывать методы построения запросов напрямую, без кэша
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderQueryBenchmark {
+    @Param({
+            "sentInStoreOrders",
+            "storeStatistic",
+            "orderWithProductInCategories",
+            "orderWithProductCategory",
+            "orderDayStatistic"
+    })
+    public String queryName;
+
+    private EntityManager entityManager;
+    private Supplier<JpaCriteriaQuery<?>> queryFactory;
+    private PreparedCriteriaQuery<?> preparedQuery;
+    private UnaryOperator<TypedQuery<?>> parameterBinder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final var context = BenchmarkApplication.context();
+        final var entityManagerFactory = context.getBean(EntityManagerFactory.class);
+        entityManager = entityManagerFactory.createEntityManager();
+        final var cb = entityManagerFactory.unwrap(SessionFactory.class).getCriteriaBuilder();
+        final var queries = context.getBean(OrderQueries.class);
+        final var parameters = BenchmarkParameters.load(entityManager);
+        switch (queryName) {
+            case "sentInStoreOrders" -> {
+                queryFactory = () -> OrderQueries.createSentInStoreOrdersQuery(cb, false);
+                preparedQuery = queries.getSentInStoreOrders();
+                parameterBinder = query -> query.setParameter(OrderQueries.STORE_ID, parameters.storeId());
+            }
+            case "storeStatistic" -> {
+                queryFactory = () -> OrderQueries.createStoreStatisticQuery(cb, false, false);
+                preparedQuery = queries.getStoreStatistic();
+                parameterBinder = query -> query
+                        .setParameter(OrderQueries.LOWER_BOUND, BigDecimal.ZERO)
+                        .setParameter(OrderQueries.UPPER_BOUND, BigDecimal.valueOf(Long.MAX_VALUE));
+            }
+            case "orderWithProductInCategories" -> {
+                queryFactory = () -> OrderQueries.createOrderWithProductInCategoriesQuery(cb);
+                preparedQuery = queries.getOrderWithProductInCategories();
+                parameterBinder = query -> query.setParameter(
+                        OrderQueries.CATEGORY_NAMES,
+                        parameters.leafCategoryNames().toArray(String[]::new)
+                );
+            }
+            case "orderWithProductCategory" -> {
+                final var categoryIds = context.getBean(CategoryTreeIndex.class)
+                        .findDescendantIds(parameters.rootCategoryName())
+                        .toArray(UUID[]::new);
+                queryFactory = () -> OrderQueries.createOrderWithProductCategoryQuery(cb);
+                preparedQuery = queries.getOrderWithProductCategory();
+                parameterBinder = query -> query.setParameter(OrderQueries.CATEGORY_IDS, categoryIds);
+            }
+            case "orderDayStatistic" -> {
+                queryFactory = () -> OrderQueries.createOrderDayStatisticQuery(cb);
+                preparedQuery = queries.getOrderDayStatistic();
+                parameterBinder = query -> query
+                        .setParameter(OrderQueries.START_DATE, parameters.startDate())
+                        .setParameter(OrderQueries.END_DATE, parameters.endDate());
+            }
+            default -> throw new IllegalArgumentException("Unknown query " + queryName);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManager.close();
+        BenchmarkApplication.close();
+    }
+
+    @Benchmark
+    public Object build() {
+        return queryFactory.get();
+    }
+
+    @Benchmark
+    public String translate() {
+        return SqlRenderer.render(entityManager.createQuery(queryFactory.get()));
+    }
+
+    @Benchmark
+    public Object prepare() {
+        return parameterBinder.apply(preparedQuery.createQuery(entityManager));
+    }
+
+    @Benchmark
+    public List<?> execute() {
+        final var result = parameterBinder.apply(preparedQuery.createQuery(entityManager)).getResultList();
+        entityManager.clear();
+        return result;
+    }
+
+    @Benchmark
+    public List<?> executeAdHoc() {
+        final var result = parameterBinder.apply(entityManager.createQuery(queryFactory.get())).getResultList();
+        entityManager.clear();
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+package ru.denis5726.criteriaarticle.repository.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Tuple;
+import org.hibernate.SessionFactory;
+import org.hibernate.query.criteria.HibernateCriteriaBuilder;
+import org.hibernate.query.criteria.JpaCriteriaQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ru.denis5726.criteriaarticle.benchmark.BenchmarkApplication;
+import ru.denis5726.criteriaarticle.benchmark.BenchmarkParameters;
+import ru.denis5726.criteriaarticle.config.properties.CategoryOrderIndexProperties;
+import ru.denis5726.criteriaarticle.config.properties.StoreStatisticProperties;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.entity.OrderStatusHistory;
+import ru.denis5726.criteriaarticle.entity.OrderStatusHistory_;
+import ru.denis5726.criteriaarticle.entity.Order_;
+import ru.denis5726.criteriaarticle.index.CategoryOrderIndex;
+import ru.denis5726.criteriaarticle.index.CategoryTreeIndex;
+import ru.denis5726.criteriaarticle.metrics.QueryMetrics;
+import ru.denis5726.criteriaarticle.model.OrderSentInStoreProjection;
+import ru.denis5726.criteriaarticle.model.OrderStoreStatisticProjection;
+import ru.denis5726.criteriaarticle.repository.query.PreparedCriteriaQuery;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Сравнение способов получения проекций из строк результата на одном и том же запросе:
+// cb.construct (Hibernate создаёт объект сам) и Tuple с ручным маппингом по псевдонимам
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProjectionMappingBenchmark {
+    private EntityManager entityManager;
+    private OrderRepositoryImpl repository;
+    private BenchmarkParameters parameters;
+    private PreparedCriteriaQuery<Tuple> sentInStoreOrdersTupleQuery;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final var context = BenchmarkApplication.context();
+        entityManager = context.getBean(EntityManagerFactory.class).createEntityManager();
+        repository = new OrderRepositoryImpl(
+                entityManager,
+                context.getBean(OrderQueries.class),
+                context.getBean(OrderFilterQueries.class),
+                context.getBean(CategoryTreeIndex.class),
+                context.getBean(CategoryOrderIndex.class),
+                context.getBean(StoreStatisticShards.class),
+                context.getBean(StoreStatisticProperties.class),
+                context.getBean(CategoryOrderIndexProperties.class),
+                context.getBean(QueryMetrics.class)
+        );
+        parameters = BenchmarkParameters.load(entityManager);
+        sentInStoreOrdersTupleQuery = new PreparedCriteriaQuery<>(createSentInStoreOrdersTupleQuery(
+                context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getCriteriaBuilder()
+        ));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        entityManager.close();
+        BenchmarkApplication.close();
+    }
+
+    @Benchmark
+    public List<OrderSentInStoreProjection> sentInStoreConstruct() {
+        return repository.findSentInStoreOrdersByStoreId(parameters.storeId());
+    }
+
+    @Benchmark
+    public List<OrderSentInStoreProjection> sentInStoreTuple() {
+        return sentInStoreOrdersTupleQuery.createQuery(entityManager)
+                .setParameter(OrderQueries.STORE_ID, parameters.storeId())
+                .getResultList()
+                .stream()
+                .map(tuple -> new OrderSentInStoreProjection(
+                        tuple.get("id", UUID.class),
+                        tuple.get("createdAt", ZonedDateTime.class),
+                        tuple.get("totalPrice", BigDecimal.class)
+                ))
+                .toList();
+    }
+
+    @Benchmark
+    public List<OrderStoreStatisticProjection> storeStatisticTuple() {
+        return repository.findStoreStatistic(BigDecimal.ZERO, BigDecimal.valueOf(Long.MAX_VALUE));
+    }
+
+    // Тот же запрос, что и OrderQueries.createSentInStoreOrdersQuery, но с выборкой в Tuple
+    private static JpaCriteriaQuery<Tuple> createSentInStoreOrdersTupleQuery(HibernateCriteriaBuilder cb) {
+        final var query = cb.createTupleQuery();
+        final var order = query.from(Order.class);
+        final var sentToStore = query.subquery(Integer.class);
+        final var orderStatusHistory = sentToStore.from(OrderStatusHistory.class);
+        sentToStore
+                .select(cb.literal(1))
+                .where(
+                        cb.equal(
+                                orderStatusHistory.get(OrderStatusHistory_.ORDER).get(Order_.ID),
+                                order.get(Order_.ID)
+                        ),
+                        cb.equal(
+                                orderStatusHistory.get(OrderStatusHistory_.STATUS),
+                                cb.literal(Order.Status.SENT_TO_STORE)
+                        )
+                );
+
+        return query
+                .multiselect(
+                        order.get(Order_.ID).as(UUID.class).alias("id"),
+                        order.get(Order_.CREATED_AT).as(ZonedDateTime.class).alias("createdAt"),
+                        order.get(Order_.TOTAL_AMOUNT).as(BigDecimal.class).alias("totalPrice")
+                )
+                .where(
+                        cb.exists(sentToStore),
+                        cb.equal(order.get(Order_.STORE_ID), cb.parameter(UUID.class, OrderQueries.STORE_ID)),
+                        cb.greaterThan(order.get(Order_.ITEM_COUNT), 0L)
+                )
+                .orderBy(cb.desc(order.get(Order_.CREATED_AT)), cb.desc(order.get(Order_.ID)));
+    }
+}
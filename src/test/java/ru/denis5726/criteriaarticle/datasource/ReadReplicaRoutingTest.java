@@ -0,0 +1,81 @@
+package ru.denis5726.criteriaarticle.datasource;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Маршрутизация транзакций между основной БД и репликой. Роль реплики играет та же локальная БД,
+// соединения различаются по application_name пула реплики
+@SpringBootTest(properties = {
+        "app.read-replicas.enabled=true",
+        "app.read-replicas.instances[0].name=test-replica",
+        "app.read-replicas.instances[0].url=${spring.datasource.url}"
+})
+@Import(ReadReplicaRoutingTest.PrimaryReader.class)
+class ReadReplicaRoutingTest {
+    private static final String REPLICA_APPLICATION_NAME = "criteria-article/test-replica";
+
+    @Autowired
+    private ReadReplicaDataSource readReplicaDataSource;
+    @Autowired
+    private TransactionTemplate readOnlyTransactionTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private PrimaryReader primaryReader;
+    @Autowired
+    private EntityManager entityManager;
+
+    @BeforeEach
+    void checkLag() {
+        // Не ждём первой проверки по расписанию
+        readReplicaDataSource.checkLag();
+    }
+
+    @Test
+    void readOnlyTransactionUsesReplica() {
+        assertThat(applicationName(readOnlyTransactionTemplate)).isEqualTo(REPLICA_APPLICATION_NAME);
+    }
+
+    @Test
+    void readWriteTransactionUsesPrimary() {
+        final var readWriteTransactionTemplate = new TransactionTemplate(transactionManager);
+        assertThat(applicationName(readWriteTransactionTemplate)).isNotEqualTo(REPLICA_APPLICATION_NAME);
+    }
+
+    @Test
+    void usePrimaryOverridesReadOnlyRouting() {
+        assertThat(primaryReader.applicationName()).isNotEqualTo(REPLICA_APPLICATION_NAME);
+        // Отметка снимается после выхода из метода
+        assertThat(applicationName(readOnlyTransactionTemplate)).isEqualTo(REPLICA_APPLICATION_NAME);
+    }
+
+    private String applicationName(TransactionTemplate transactionTemplate) {
+        return transactionTemplate.execute(status -> applicationName(entityManager));
+    }
+
+    private static String applicationName(EntityManager entityManager) {
+        return (String) entityManager
+                .createNativeQuery("select current_setting('application_name')")
+                .getSingleResult();
+    }
+
+    static class PrimaryReader {
+        @Autowired
+        private EntityManager entityManager;
+
+        @UsePrimary
+        @Transactional(readOnly = true)
+        public String applicationName() {
+            return ReadReplicaRoutingTest.applicationName(entityManager);
+        }
+    }
+}
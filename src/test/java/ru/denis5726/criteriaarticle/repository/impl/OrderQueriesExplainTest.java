@@ -0,0 +1,327 @@
+package ru.denis5726.criteriaarticle.repository.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.denis5726.criteriaarticle.entity.Order;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBreakdown;
+import ru.denis5726.criteriaarticle.model.OrderRevenueGranularity;
+import ru.denis5726.criteriaarticle.repository.impl.OrderFilterQueries.Criterion;
+import ru.denis5726.criteriaarticle.repository.query.PreparedCriteriaQuery;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Проверка, что у каждого запроса OrderQueries есть индексный путь доступа к большим таблицам.
+// Последовательное сканирование запрещается (enable_seqscan = off), и если postgres всё равно читает
+// большую таблицу целиком, значит, подходящего индекса нет. Hash и merge join тоже запрещаются: при большой
+// оценке числа строк с ними выгоднее прочитать таблицу целиком, даже если индекс есть.
+// План обобщённый (force_generic_plan), поэтому результат не зависит от объёма данных в БД
+@SpringBootTest
+class OrderQueriesExplainTest {
+    // Таблицы, размер которых растёт вместе с количеством заказов, и каталог товаров,
+    // который тоже нельзя читать целиком на каждый запрос
+    private static final Set<String> LARGE_TABLES = Set.of("order", "order_item", "order_status_history", "product");
+    // Партиции месяцев и партиция по умолчанию секционированных order и order_status_history
+    private static final Pattern PARTITION_SUFFIX = Pattern.compile("_(p\\d{4}_\\d{2}|default)$");
+    private static final Pattern PARAMETER = Pattern.compile("\\?");
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private OrderQueries queries;
+    @Autowired
+    private OrderFilterQueries filterQueries;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void sentInStoreOrdersUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getSentInStoreOrders(),
+                query -> query.setParameter(OrderQueries.STORE_ID, UUID.randomUUID())
+        );
+    }
+
+    @Test
+    void sentInStoreOrdersAfterCursorUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getSentInStoreOrdersAfterCursor(),
+                query -> query
+                        .setParameter(OrderQueries.STORE_ID, UUID.randomUUID())
+                        .setParameter(OrderQueries.CURSOR_CREATED_AT, ZonedDateTime.now())
+                        .setParameter(OrderQueries.CURSOR_ID, UUID.randomUUID())
+                        .setMaxResults(100)
+        );
+    }
+
+    @Test
+    void storeStatisticUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getStoreStatistic(),
+                query -> query
+                        .setParameter(OrderQueries.LOWER_BOUND, BigDecimal.ZERO)
+                        .setParameter(OrderQueries.UPPER_BOUND, BigDecimal.valueOf(1_000_000))
+        );
+    }
+
+    @Test
+    void storeStatisticShardUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getStoreStatisticShard(),
+                query -> query
+                        .setParameter(OrderQueries.FROM_STORE_ID, new UUID(0L, 0L))
+                        .setParameter(OrderQueries.TO_STORE_ID, new UUID(Long.MAX_VALUE, -1L))
+                        .setParameter(OrderQueries.LOWER_BOUND, BigDecimal.ZERO)
+                        .setParameter(OrderQueries.UPPER_BOUND, BigDecimal.valueOf(1_000_000))
+        );
+    }
+
+    @Test
+    void topStoreStatisticUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getTopStoreStatistic(),
+                query -> bindWeights(query)
+                        .setParameter(OrderQueries.LOWER_BOUND, BigDecimal.ZERO)
+                        .setParameter(OrderQueries.UPPER_BOUND, BigDecimal.valueOf(1_000_000))
+                        .setMaxResults(20)
+        );
+    }
+
+    @Test
+    void topStoreStatisticShardUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getTopStoreStatisticShard(),
+                query -> bindWeights(query)
+                        .setParameter(OrderQueries.FROM_STORE_ID, new UUID(0L, 0L))
+                        .setParameter(OrderQueries.TO_STORE_ID, new UUID(Long.MAX_VALUE, -1L))
+                        .setParameter(OrderQueries.LOWER_BOUND, BigDecimal.ZERO)
+                        .setParameter(OrderQueries.UPPER_BOUND, BigDecimal.valueOf(1_000_000))
+                        .setMaxResults(20)
+        );
+    }
+
+    @Test
+    void orderWithProductInCategoriesUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getOrderWithProductInCategories(),
+                query -> query.setParameter(OrderQueries.CATEGORY_NAMES, new String[]{"Соки", "Чай"})
+        );
+    }
+
+    @Test
+    void ordersByOrdinalsUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getOrdersByOrdinals(),
+                query -> query.setParameter(OrderQueries.ORDINALS, new Integer[]{1, 2, 3})
+        );
+    }
+
+    @Test
+    void orderWithProductCategoryUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getOrderWithProductCategory(),
+                query -> query.setParameter(OrderQueries.CATEGORY_IDS, new UUID[]{UUID.randomUUID()})
+        );
+    }
+
+    @Test
+    void orderDayStatisticUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getOrderDayStatistic(),
+                query -> query
+                        .setParameter(OrderQueries.START_DATE, LocalDate.now().minusDays(30))
+                        .setParameter(OrderQueries.END_DATE, LocalDate.now())
+        );
+    }
+
+    @Test
+    void orderRevenueRollupUsesIndexes() throws JsonProcessingException {
+        assertNoLargeTableFullScan(
+                queries.getOrderRevenueRollup(),
+                query -> query
+                        .setParameter(OrderQueries.GRANULARITY, OrderRevenueGranularity.DAY)
+                        .setParameter(OrderQueries.BREAKDOWN, OrderRevenueBreakdown.STORE)
+                        .setParameter(OrderQueries.FROM_BUCKET, OffsetDateTime.now().minusDays(30))
+                        .setParameter(OrderQueries.TO_BUCKET, OffsetDateTime.now())
+        );
+    }
+
+    // Каждое условие фильтра, по которому заказы находятся по индексу, отдельно
+    // и вместе со всеми условиями, для которых индекса нет
+    @Test
+    void orderFilterUsesIndexes() throws JsonProcessingException {
+        final var unindexed = EnumSet.of(
+                Criterion.CUSTOMER,
+                Criterion.STATUSES,
+                Criterion.MIN_TOTAL_PRICE,
+                Criterion.MAX_TOTAL_PRICE
+        );
+        for (final var indexed : List.of(
+                EnumSet.of(Criterion.STORE),
+                EnumSet.of(Criterion.CATEGORY),
+                EnumSet.of(Criterion.CREATED_FROM, Criterion.CREATED_TO)
+        )) {
+            final var withUnindexed = EnumSet.copyOf(indexed);
+            withUnindexed.addAll(unindexed);
+            for (final var criteria : List.of(indexed, withUnindexed)) {
+                assertNoLargeTableFullScan(filterQueries.getQuery(criteria), query -> {
+                    criteria.forEach(criterion -> query.setParameter(criterion.parameter, switch (criterion) {
+                        case STORE, CUSTOMER -> UUID.randomUUID();
+                        case CATEGORY -> new UUID[]{UUID.randomUUID()};
+                        case CREATED_FROM -> ZonedDateTime.now().minusDays(30);
+                        case CREATED_TO -> ZonedDateTime.now();
+                        case STATUSES -> List.of(Order.Status.COMPLETED, Order.Status.CANCELED, Order.Status.REJECTED);
+                        case MIN_TOTAL_PRICE -> BigDecimal.ZERO;
+                        case MAX_TOTAL_PRICE -> BigDecimal.valueOf(1_000_000);
+                    }));
+                    return query.setMaxResults(100);
+                });
+            }
+        }
+    }
+
+    private void assertNoLargeTableFullScan(
+            PreparedCriteriaQuery<?> preparedQuery,
+            UnaryOperator<TypedQuery<?>> parameterBinder
+    ) throws JsonProcessingException {
+        // SQL запроса берём у самого Hibernate, выполнив запрос в сессии с перехватом SQL
+        final var sql = new AtomicReference<String>();
+        final var emptyPartitions = new HashSet<String>();
+        final String plan;
+        try (var session = entityManagerFactory.unwrap(SessionFactory.class)
+                .withOptions()
+                .statementInspector(statement -> {
+                    sql.set(statement);
+                    return statement;
+                })
+                .openSession()) {
+            session.beginTransaction();
+            try {
+                parameterBinder.apply(preparedQuery.createQuery(session)).getResultList();
+                plan = session.doReturningWork(connection -> {
+                    try (var statement = connection.createStatement()) {
+                        // Для пустых партиций будущих месяцев все пути доступа одинаково дёшевы,
+                        // и postgres может выбрать проход по любому индексу
+                        try (var resultSet = statement.executeQuery(
+                                "select relname from pg_class where relispartition and relkind = 'r' and relpages = 0"
+                        )) {
+                            while (resultSet.next()) {
+                                emptyPartitions.add(resultSet.getString(1));
+                            }
+                        }
+                        statement.execute("set local enable_seqscan = off");
+                        statement.execute("set local enable_hashjoin = off");
+                        statement.execute("set local enable_mergejoin = off");
+                        statement.execute("set local plan_cache_mode = force_generic_plan");
+                        // Обобщённый план строится без учёта значений параметров, поэтому передаются null
+                        final var parameterCount = PARAMETER.matcher(sql.get()).results().count();
+                        statement.execute("prepare explained as " + numberParameters(sql.get()));
+                        try {
+                            final var resultSet = statement.executeQuery(
+                                    "explain (format json) execute explained ("
+                                            + String.join(", ", Collections.nCopies((int) parameterCount, "null"))
+                                            + ")"
+                            );
+                            resultSet.next();
+                            return resultSet.getString(1);
+                        } finally {
+                            statement.execute("deallocate explained");
+                        }
+                    }
+                });
+            } finally {
+                session.getTransaction().rollback();
+            }
+        }
+
+        final var fullScans = new ArrayList<String>();
+        collectLargeTableFullScans(objectMapper.readTree(plan).get(0).get("Plan"), emptyPartitions, fullScans);
+        assertThat(fullScans)
+                .as("Full scans in plan of%n%s%n%s", sql.get(), plan)
+                .isEmpty();
+    }
+
+    private static TypedQuery<?> bindWeights(TypedQuery<?> query) {
+        return query
+                .setParameter(OrderQueries.COMPLETED_WEIGHT, 1.0)
+                .setParameter(OrderQueries.CANCELED_WEIGHT, 1.0)
+                .setParameter(OrderQueries.REJECTED_WEIGHT, 1.0);
+    }
+
+    // В подготовленном запросе postgres параметры обозначаются $1, $2... вместо JDBC-параметров ?
+    private static String numberParameters(String sql) {
+        final var matcher = PARAMETER.matcher(sql);
+        final var result = new StringBuilder();
+        var number = 0;
+        while (matcher.find()) {
+            matcher.appendReplacement(result, Matcher.quoteReplacement("$" + ++number));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    // Полным считается и проход по индексу без условия на его столбцы: с enable_seqscan = off
+    // postgres выбирает его вместо Seq Scan, если подходящего индекса нет. Исключение - проход по индексу
+    // в порядке ORDER BY под Limit: он останавливается, как только набрано нужное число строк
+    private static void collectLargeTableFullScans(
+            JsonNode plan,
+            Set<String> emptyPartitions,
+            List<String> fullScans
+    ) {
+        collectLargeTableFullScans(plan, false, emptyPartitions, fullScans);
+    }
+
+    // limited - узел читается по мере того, как строки забирает Limit выше по плану
+    private static void collectLargeTableFullScans(
+            JsonNode plan,
+            boolean limited,
+            Set<String> emptyPartitions,
+            List<String> fullScans
+    ) {
+        final var nodeType = plan.path("Node Type").asText();
+        final var relationName = plan.path("Relation Name").asText();
+        final var relation = PARTITION_SUFFIX.matcher(relationName).replaceFirst("");
+        if (LARGE_TABLES.contains(relation) && !emptyPartitions.contains(relationName)) {
+            if (nodeType.equals("Seq Scan") || nodeType.startsWith("Index") && !plan.has("Index Cond") && !limited) {
+                fullScans.add(nodeType + " on " + relation);
+            }
+        }
+        for (final var child : plan.path("Plans")) {
+            collectLargeTableFullScans(child, isLimitedChild(plan, child, limited), emptyPartitions, fullScans);
+        }
+    }
+
+    // Limit ограничивает чтение только через узлы, которые отдают строки по одной, не дочитывая вход до конца:
+    // слияние уже упорядоченных партиций, досортировку по уже упорядоченному префиксу и внешнюю сторону
+    // Nested Loop. Sort, Hash, агрегация и прочие узлы сначала читают весь вход
+    private static boolean isLimitedChild(JsonNode plan, JsonNode child, boolean limited) {
+        return switch (plan.path("Node Type").asText()) {
+            case "Limit" -> true;
+            case "Merge Append", "Incremental Sort" -> limited;
+            case "Nested Loop" -> limited && child.path("Parent Relationship").asText().equals("Outer");
+            default -> false;
+        };
+    }
+}
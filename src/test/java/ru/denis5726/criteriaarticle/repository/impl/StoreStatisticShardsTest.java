@@ -0,0 +1,184 @@
+package ru.denis5726.criteriaarticle.repository.impl;
+
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Деление id магазинов на диапазоны и слияние результатов диапазонов, без БД
+class StoreStatisticShardsTest {
+    private static final UUID MIN = new UUID(0L, 0L);
+    private static final UUID MAX = new UUID(-1L, -1L);
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 7, 16})
+    void rangesCoverAllIdsWithoutGaps(int shards) {
+        final var ranges = StoreStatisticShards.split(shards);
+
+        assertThat(ranges).hasSize(shards);
+        assertThat(ranges.getFirst()[0]).isEqualTo(MIN);
+        assertThat(ranges.getLast()[1]).isEqualTo(MAX);
+        for (final var range : ranges) {
+            assertThat(compareUnsigned(range[0], range[1])).isLessThan(0);
+        }
+        // Следующий диапазон начинается сразу за последним id предыдущего
+        for (var i = 1; i < ranges.size(); i++) {
+            final var previousTo = ranges.get(i - 1)[1];
+            final var from = ranges.get(i)[0];
+            assertThat(previousTo.getLeastSignificantBits()).isEqualTo(-1L);
+            assertThat(from.getLeastSignificantBits()).isZero();
+            assertThat(from.getMostSignificantBits()).isEqualTo(previousTo.getMostSignificantBits() + 1);
+        }
+    }
+
+    @Test
+    void idsWithHighBitFallIntoUpperRanges() {
+        final var ranges = StoreStatisticShards.split(4);
+
+        // Для postgres 80000000-... идёт сразу за 7fffffff-..., а не перед нулём, как long со знаком
+        assertThat(shardOf(ranges, new UUID(0x3ffffffffffffffeL, -1L))).isEqualTo(0);
+        assertThat(shardOf(ranges, new UUID(Long.MAX_VALUE, -1L))).isEqualTo(2);
+        assertThat(shardOf(ranges, new UUID(Long.MIN_VALUE, 0L))).isEqualTo(2);
+        assertThat(shardOf(ranges, UUID.fromString("ffffffff-ffff-ffff-0000-000000000000"))).isEqualTo(3);
+    }
+
+    @Test
+    void everyIdFallsIntoExactlyOneRange() {
+        final var ranges = StoreStatisticShards.split(7);
+        final var random = new Random(42);
+
+        for (var i = 0; i < 10_000; i++) {
+            final var id = new UUID(random.nextLong(), random.nextLong());
+            final var matches = ranges.stream()
+                    .filter(range -> compareUnsigned(range[0], id) <= 0 && compareUnsigned(id, range[1]) <= 0)
+                    .count();
+            assertThat(matches).as("id %s", id).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void mergeKeepsOrderAcrossShards() {
+        final var merged = StoreStatisticShards.merge(
+                List.of(
+                        List.of(counters("a", 9), counters("b", 4), counters("c", 1)),
+                        List.of(),
+                        List.of(counters("d", 7), counters("e", 6)),
+                        List.of(counters("f", 8), counters("g", 2))
+                ),
+                StoreStatisticShards.ORDER,
+                Integer.MAX_VALUE
+        );
+
+        assertThat(merged).extracting(tuple -> tuple.get("name")).containsExactly("a", "f", "d", "e", "b", "g", "c");
+    }
+
+    @Test
+    void mergeStopsAtLimit() {
+        final var results = List.of(
+                List.of(counters("a", 9), counters("b", 4)),
+                List.of(counters("c", 8), counters("d", 7), counters("e", 6))
+        );
+
+        assertThat(StoreStatisticShards.merge(results, StoreStatisticShards.ORDER, 3))
+                .extracting(tuple -> tuple.get("name"))
+                .containsExactly("a", "c", "d");
+        assertThat(StoreStatisticShards.merge(results, StoreStatisticShards.ORDER, 0)).isEmpty();
+        assertThat(StoreStatisticShards.merge(List.of(), StoreStatisticShards.ORDER, 3)).isEmpty();
+    }
+
+    @Test
+    void mergeBreaksScoreTiesByUnsignedStoreId() {
+        final var low = UUID.fromString("10000000-0000-0000-0000-000000000000");
+        final var middle = UUID.fromString("7fffffff-ffff-ffff-ffff-ffffffffffff");
+        final var high = UUID.fromString("80000000-0000-0000-0000-000000000000");
+        final var highest = UUID.fromString("f0000000-0000-0000-0000-000000000000");
+
+        final var merged = StoreStatisticShards.merge(
+                List.of(
+                        List.of(scored(highest, 5.0), scored(low, 1.0)),
+                        List.of(scored(low, 5.0), scored(middle, 5.0)),
+                        List.of(scored(high, 5.0))
+                ),
+                StoreStatisticShards.WEIGHTED_ORDER,
+                4
+        );
+
+        // Как order by score desc, store_id в postgres: при равном score id сравниваются без знака
+        assertThat(merged).extracting(tuple -> tuple.get("storeId")).containsExactly(low, middle, high, highest);
+    }
+
+    private static int shardOf(List<UUID[]> ranges, UUID id) {
+        for (var i = 0; i < ranges.size(); i++) {
+            if (compareUnsigned(ranges.get(i)[0], id) <= 0 && compareUnsigned(id, ranges.get(i)[1]) <= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int compareUnsigned(UUID left, UUID right) {
+        final var result = Long.compareUnsigned(left.getMostSignificantBits(), right.getMostSignificantBits());
+        return result != 0
+                ? result
+                : Long.compareUnsigned(left.getLeastSignificantBits(), right.getLeastSignificantBits());
+    }
+
+    private static Tuple counters(String name, long completed) {
+        return new MapTuple(Map.of("name", name, "completed", completed, "canceled", 0L, "rejected", 0L));
+    }
+
+    private static Tuple scored(UUID storeId, double score) {
+        return new MapTuple(Map.of("storeId", storeId, "score", score));
+    }
+
+    // Строка результата по именам столбцов, как её читает StoreStatisticShards
+    private record MapTuple(Map<String, Object> values) implements Tuple {
+        MapTuple {
+            values = new LinkedHashMap<>(values);
+        }
+
+        @Override
+        public <X> X get(TupleElement<X> tupleElement) {
+            return tupleElement.getJavaType().cast(values.get(tupleElement.getAlias()));
+        }
+
+        @Override
+        public <X> X get(String alias, Class<X> type) {
+            return type.cast(values.get(alias));
+        }
+
+        @Override
+        public Object get(String alias) {
+            return values.get(alias);
+        }
+
+        @Override
+        public <X> X get(int i, Class<X> type) {
+            return type.cast(get(i));
+        }
+
+        @Override
+        public Object get(int i) {
+            return toArray()[i];
+        }
+
+        @Override
+        public Object[] toArray() {
+            return values.values().toArray();
+        }
+
+        @Override
+        public List<TupleElement<?>> getElements() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package ru.denis5726.criteriaarticle.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import ru.denis5726.criteriaarticle.config.properties.OrderRevenueRollupProperties;
+import ru.denis5726.criteriaarticle.entity.OrderRevenueRollup;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBreakdown;
+import ru.denis5726.criteriaarticle.model.OrderRevenueBucketProjection;
+import ru.denis5726.criteriaarticle.model.OrderRevenueGranularity;
+import ru.denis5726.criteriaarticle.repository.OrderRepository;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Сборка ряда выручки из уровней order_revenue_rollup. Уровни строятся в памяти из набора позиций так же,
+// как их строит order_revenue_rollup_bucket, а ряд сравнивается с суммами по тем же позициям напрямую
+class OrderRevenueSeriesServiceTest {
+    private static final ZoneId UTC = ZoneOffset.UTC;
+    private static final ZoneId BERLIN = ZoneId.of("Europe/Berlin");
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    private static final ZoneId KOLKATA = ZoneId.of("Asia/Kolkata");
+    // Летом +11:00, зимой +10:30
+    private static final ZoneId LORD_HOWE = ZoneId.of("Australia/Lord_Howe");
+    private static final List<UUID> STORES = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+    // Позиция каждые 37 минут, чтобы позиции попадали в разные минуты часа
+    private static final List<Item> ITEMS = items(
+            Instant.parse("2024-12-20T00:00:00Z"),
+            Instant.parse("2025-11-10T00:00:00Z"),
+            Duration.ofMinutes(37)
+    );
+
+    private final OrderRepository repository = mock(OrderRepository.class);
+
+    @Test
+    void monthsWithPartialEdgeMonthsAreBuiltFromDaysAndMonths() {
+        final var service = service(BERLIN);
+
+        final var series = service.findSeries(
+                OrderRevenueGranularity.MONTH,
+                OrderRevenueBreakdown.STORE,
+                LocalDate.of(2025, 1, 15),
+                LocalDate.of(2025, 4, 10),
+                null
+        );
+
+        assertThat(buckets(series)).containsExactlyElementsOf(expected(
+                OrderRevenueGranularity.MONTH,
+                OrderRevenueBreakdown.STORE,
+                LocalDate.of(2025, 1, 15),
+                LocalDate.of(2025, 4, 10),
+                BERLIN
+        ));
+        // Целые месяцы - из уровня месяцев, неполные края - из дней
+        verify(repository).findOrderRevenueRollup(
+                OrderRevenueGranularity.DAY,
+                OrderRevenueBreakdown.STORE,
+                startOfDay(2025, 1, 15, BERLIN),
+                startOfDay(2025, 2, 1, BERLIN)
+        );
+        verify(repository).findOrderRevenueRollup(
+                OrderRevenueGranularity.MONTH,
+                OrderRevenueBreakdown.STORE,
+                startOfDay(2025, 2, 1, BERLIN),
+                startOfDay(2025, 4, 1, BERLIN)
+        );
+        verify(repository).findOrderRevenueRollup(
+                OrderRevenueGranularity.DAY,
+                OrderRevenueBreakdown.STORE,
+                startOfDay(2025, 4, 1, BERLIN),
+                startOfDay(2025, 4, 11, BERLIN)
+        );
+    }
+
+    @Test
+    void monthInsideOneMonthIsBuiltFromDays() {
+        final var service = service(BERLIN);
+
+        final var series = service.findSeries(
+                OrderRevenueGranularity.MONTH,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 3, 5),
+                LocalDate.of(2025, 3, 20),
+                null
+        );
+
+        assertThat(buckets(series)).hasSize(1).containsExactlyElementsOf(expected(
+                OrderRevenueGranularity.MONTH,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 3, 5),
+                LocalDate.of(2025, 3, 20),
+                BERLIN
+        ));
+        verify(repository).findOrderRevenueRollup(
+                eq(OrderRevenueGranularity.DAY),
+                eq(OrderRevenueBreakdown.TOTAL),
+                any(),
+                any()
+        );
+    }
+
+    @Test
+    void daysAcrossDaylightSavingTransitions() {
+        final var service = service(BERLIN);
+
+        // 30 марта в Берлине 23 часа, 26 октября - 25 часов
+        for (final var day : List.of(LocalDate.of(2025, 3, 30), LocalDate.of(2025, 10, 26))) {
+            final var series = service.findSeries(
+                    OrderRevenueGranularity.DAY,
+                    OrderRevenueBreakdown.TOTAL,
+                    day.minusDays(1),
+                    day.plusDays(1),
+                    null
+            );
+
+            assertThat(buckets(series)).hasSize(3).containsExactlyElementsOf(expected(
+                    OrderRevenueGranularity.DAY,
+                    OrderRevenueBreakdown.TOTAL,
+                    day.minusDays(1),
+                    day.plusDays(1),
+                    BERLIN
+            ));
+        }
+    }
+
+    @Test
+    void hoursOfDaylightSavingTransitionDay() {
+        final var service = service(BERLIN);
+
+        final var series = service.findSeries(
+                OrderRevenueGranularity.HOUR,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 10, 26),
+                LocalDate.of(2025, 10, 26),
+                null
+        );
+
+        // Час 02:00 повторяется с разными смещениями
+        assertThat(buckets(series)).hasSize(25).containsExactlyElementsOf(expected(
+                OrderRevenueGranularity.HOUR,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 10, 26),
+                LocalDate.of(2025, 10, 26),
+                BERLIN
+        ));
+    }
+
+    @Test
+    void daysInOtherZoneAcrossDaylightSavingTransitionAreBuiltFromHours() {
+        final var service = service(UTC);
+
+        final var series = service.findSeries(
+                OrderRevenueGranularity.DAY,
+                OrderRevenueBreakdown.STORE,
+                LocalDate.of(2025, 3, 8),
+                LocalDate.of(2025, 3, 10),
+                NEW_YORK
+        );
+
+        assertThat(buckets(series)).containsExactlyElementsOf(expected(
+                OrderRevenueGranularity.DAY,
+                OrderRevenueBreakdown.STORE,
+                LocalDate.of(2025, 3, 8),
+                LocalDate.of(2025, 3, 10),
+                NEW_YORK
+        ));
+        verify(repository).findOrderRevenueRollup(
+                OrderRevenueGranularity.HOUR,
+                OrderRevenueBreakdown.STORE,
+                startOfDay(2025, 3, 8, NEW_YORK),
+                startOfDay(2025, 3, 11, NEW_YORK)
+        );
+    }
+
+    @Test
+    void daysInRollupZoneWithHalfHourOffsetAreBuiltFromDays() {
+        final var service = service(KOLKATA);
+
+        final var series = service.findSeries(
+                OrderRevenueGranularity.WEEK,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 6, 2),
+                LocalDate.of(2025, 6, 22),
+                null
+        );
+
+        assertThat(buckets(series)).hasSize(3).containsExactlyElementsOf(expected(
+                OrderRevenueGranularity.WEEK,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 6, 2),
+                LocalDate.of(2025, 6, 22),
+                KOLKATA
+        ));
+    }
+
+    @Test
+    void hoursInZoneWithHalfHourOffsetAreRejected() {
+        final var service = service(UTC);
+
+        assertThatThrownBy(() -> service.findSeries(
+                OrderRevenueGranularity.DAY,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 6, 2),
+                LocalDate.of(2025, 6, 3),
+                KOLKATA
+        ))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void hoursInZoneSwitchingToHalfHourOffsetAreRejected() {
+        final var service = service(UTC);
+
+        // 6 апреля 2025 Lord Howe переходит с +11:00 на +10:30
+        assertThatThrownBy(() -> service.findSeries(
+                OrderRevenueGranularity.DAY,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 4, 4),
+                LocalDate.of(2025, 4, 8),
+                LORD_HOWE
+        ))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(e -> ((ResponseStatusException) e).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        // До перехода смещение кратно часу
+        assertThat(service.findSeries(
+                OrderRevenueGranularity.DAY,
+                OrderRevenueBreakdown.TOTAL,
+                LocalDate.of(2025, 3, 1),
+                LocalDate.of(2025, 3, 3),
+                LORD_HOWE
+        )).hasSize(3);
+    }
+
+    private OrderRevenueSeriesService service(ZoneId rollupTimeZone) {
+        when(repository.findOrderRevenueRollup(any(), any(), any(), any())).thenAnswer(invocation -> rollup(
+                invocation.getArgument(0),
+                invocation.getArgument(1),
+                invocation.getArgument(2),
+                invocation.getArgument(3),
+                rollupTimeZone
+        ));
+        return new OrderRevenueSeriesService(repository, new OrderRevenueRollupProperties(), rollupTimeZone);
+    }
+
+    // Строки уровня с началом в [from, to), как их возвращает findOrderRevenueRollup
+    private static List<OrderRevenueBucketProjection> rollup(
+            OrderRevenueGranularity level,
+            OrderRevenueBreakdown breakdown,
+            OffsetDateTime from,
+            OffsetDateTime to,
+            ZoneId rollupTimeZone
+    ) {
+        final var rows = new TreeMap<Instant, Map<UUID, OrderRevenueBucketProjection>>();
+        for (final var item : ITEMS) {
+            final var bucket = switch (level) {
+                case HOUR -> item.createdAt().truncatedTo(ChronoUnit.HOURS);
+                case DAY -> item.createdAt().atZone(rollupTimeZone).toLocalDate()
+                        .atStartOfDay(rollupTimeZone).toInstant();
+                case MONTH -> item.createdAt().atZone(rollupTimeZone).toLocalDate().withDayOfMonth(1)
+                        .atStartOfDay(rollupTimeZone).toInstant();
+                case WEEK -> throw new IllegalArgumentException("No WEEK level in order_revenue_rollup");
+            };
+            if (bucket.isBefore(from.toInstant()) || !bucket.isBefore(to.toInstant())) {
+                continue;
+            }
+            final var key = breakdown == OrderRevenueBreakdown.TOTAL ? OrderRevenueRollup.TOTAL_KEY : item.storeId();
+            add(rows, bucket, key, item);
+        }
+        final var result = new ArrayList<OrderRevenueBucketProjection>();
+        rows.values().forEach(keys -> keys.values().forEach(row -> {
+            row.setBucket(row.getBucket().withOffsetSameInstant(ZoneOffset.UTC));
+            result.add(row);
+        }));
+        return result;
+    }
+
+    // Суммы позиций по интервалам запроса напрямую, без уровней
+    private static List<Bucket> expected(
+            OrderRevenueGranularity granularity,
+            OrderRevenueBreakdown breakdown,
+            LocalDate startDate,
+            LocalDate endDate,
+            ZoneId timeZone
+    ) {
+        final var from = startDate.atStartOfDay(timeZone).toInstant();
+        final var to = endDate.plusDays(1).atStartOfDay(timeZone).toInstant();
+        final var rows = new TreeMap<Instant, Map<UUID, OrderRevenueBucketProjection>>();
+        for (final var item : ITEMS) {
+            if (item.createdAt().isBefore(from) || !item.createdAt().isBefore(to)) {
+                continue;
+            }
+            final var time = item.createdAt().atZone(timeZone);
+            final var bucket = switch (granularity) {
+                case HOUR -> time.truncatedTo(ChronoUnit.HOURS);
+                case DAY -> time.toLocalDate().atStartOfDay(timeZone);
+                case WEEK -> time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+                        .atStartOfDay(timeZone);
+                case MONTH -> time.toLocalDate().withDayOfMonth(1).atStartOfDay(timeZone);
+            };
+            add(rows, bucket.toInstant(), breakdown == OrderRevenueBreakdown.TOTAL ? null : item.storeId(), item);
+        }
+        final var result = new ArrayList<Bucket>();
+        rows.values().forEach(keys -> keys.values().forEach(row -> result.add(new Bucket(
+                row.getBucket().atZoneSameInstant(timeZone).toOffsetDateTime(),
+                row.getKey(),
+                row.getTotalAmount(),
+                row.getItemCount()
+        ))));
+        return result;
+    }
+
+    private static void add(
+            TreeMap<Instant, Map<UUID, OrderRevenueBucketProjection>> rows,
+            Instant bucket,
+            UUID key,
+            Item item
+    ) {
+        rows.computeIfAbsent(bucket, ignored -> new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder())))
+                .merge(
+                        key,
+                        new OrderRevenueBucketProjection(bucket.atOffset(ZoneOffset.UTC), key, item.amount(), 1L),
+                        (existing, added) -> {
+                            existing.setTotalAmount(existing.getTotalAmount().add(added.getTotalAmount()));
+                            existing.setItemCount(existing.getItemCount() + 1);
+                            return existing;
+                        }
+                );
+    }
+
+    private static List<Bucket> buckets(List<OrderRevenueBucketProjection> series) {
+        return series.stream()
+                .map(row -> new Bucket(row.getBucket(), row.getKey(), row.getTotalAmount(), row.getItemCount()))
+                .toList();
+    }
+
+    private static OffsetDateTime startOfDay(int year, int month, int day, ZoneId timeZone) {
+        return LocalDate.of(year, month, day).atStartOfDay(timeZone).toInstant().atOffset(ZoneOffset.UTC);
+    }
+
+    private static List<Item> items(Instant from, Instant to, Duration step) {
+        final var items = new ArrayList<Item>();
+        var index = 0;
+        for (var createdAt = from; createdAt.isBefore(to); createdAt = createdAt.plus(step), index++) {
+            items.add(new Item(createdAt, STORES.get(index % STORES.size()), BigDecimal.valueOf(index % 100 + 1)));
+        }
+        return items;
+    }
+
+    private record Item(Instant createdAt, UUID storeId, BigDecimal amount) {
+    }
+
+    private record Bucket(OffsetDateTime bucket, UUID key, BigDecimal totalAmount, long itemCount) {
+    }
+}